@@ -0,0 +1,135 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** gitlet batch: runs a script of commands, one per line, in one process.
+ *  They share the caches, and the whole script is one transaction (see
+ *  Transaction): the staging area and refs the commands change stay in
+ *  memory, and are written when a command commits and when the script
+ *  ends, instead of after every command.
+ *
+ *  A line is a command without the "gitlet", its arguments separated by
+ *  spaces; quote an argument with ' or " to keep its spaces, or escape a
+ *  character with \.  Blank lines and lines starting with # are skipped.
+ *  For every command one line is printed:
+ *      {"line":3,"command":"commit \"fix\"","status":"ok","output":"..."}
+ *  status is "error" if the command failed, in which case whatever it
+ *  changed in the staging area and refs is dropped and the script goes on.
+ *
+ *  @author Ruth Frausto
+ */
+class Batch {
+
+    /** Runs every command of SCRIPT. */
+    static void run(String script) {
+        PrintStream out = System.out;
+        String[] lines = script.split("\r?\n", -1);
+        Transaction.begin();
+        try {
+            for (int i = 0; i < lines.length; i += 1) {
+                String line = lines[i].strip();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                String status = "ok";
+                System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+                Transaction.begin();
+                try {
+                    String[] args = split(line);
+                    if (args.length == 0) {
+                        throw Utils.error("Unterminated quote.");
+                    } else if (args[0].equals("batch") || args[0].equals("daemon")) {
+                        throw Utils.error("Not allowed in a batch: %s.", args[0]);
+                    }
+                    Main.run(args);
+                    Transaction.end();
+                } catch (RuntimeException excp) {
+                    Transaction.abort();
+                    System.out.println(excp.getMessage());
+                    status = "error";
+                } finally {
+                    System.setOut(out);
+                }
+                out.println("{\"line\":" + (i + 1) + ",\"command\":" + quote(line)
+                        + ",\"status\":\"" + status + "\",\"output\":"
+                        + quote(output.toString(StandardCharsets.UTF_8)) + "}");
+            }
+            Transaction.commit();
+        } finally {
+            Transaction.abort();
+        }
+    }
+
+    /** The arguments of LINE, or none if a quote in it isn't closed. */
+    static String[] split(String line) {
+        List<String> args = new ArrayList<>();
+        StringBuilder arg = null;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (c == '\\' && quote != '\'' && i + 1 < line.length()) {
+                i += 1;
+                c = line.charAt(i);
+            } else if (quote != 0 && c == quote) {
+                quote = 0;
+                continue;
+            } else if (quote == 0 && (c == '"' || c == '\'')) {
+                quote = c;
+                arg = arg == null ? new StringBuilder() : arg;
+                continue;
+            } else if (quote == 0 && Character.isWhitespace(c)) {
+                if (arg != null) {
+                    args.add(arg.toString());
+                    arg = null;
+                }
+                continue;
+            }
+            arg = arg == null ? new StringBuilder() : arg;
+            arg.append(c);
+        }
+        if (quote != 0) {
+            return new String[0];
+        }
+        if (arg != null) {
+            args.add(arg.toString());
+        }
+        return args.toArray(new String[0]);
+    }
+
+    /** S as a JSON string. */
+    private static String quote(String s) {
+        StringBuilder json = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        return json.append('"').toString();
+    }
+}
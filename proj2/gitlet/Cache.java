@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** An in-process cache of decoded objects, shared by every command.
+ *  Commits, trees and the file lists of trees are named by their contents,
+ *  so a cached one can never go stale and is kept until it is evicted.  The staging area and
+ *  refs (HEAD) change; whoever writes them replaces or invalidates their
+ *  entry, and invalidateMutable() drops them all for a process that may
+ *  see the repository changed by someone else.
+ *
+ *  Entries are evicted least recently used first once their estimated
+ *  size passes "cache.size" bytes (see Config).  With "cache.stats" set to
+ *  true gitlet prints the hit and miss counts after each command, to tune
+ *  that size.
+ *
+ *  @author Ruth Frausto
+ */
+class Cache {
+
+    static final String COMMIT = "commit";
+    static final String TREE = "tree";
+    /** every file of a tree, by the tree's sha1ID (see Commit.getFilesInCommit) */
+    static final String MANIFEST = "manifest";
+    static final String STAGING = "staging";
+    static final String REF = "ref";
+
+    private static final int DEFAULT_SIZE = 32 * 1024 * 1024;
+
+    /** A cached value and its estimated size in bytes. */
+    private static class Entry {
+        final Object value;
+        final long size;
+
+        Entry(Object value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    /** key: kind + ":" + name ---> value: entry, least recently used first */
+    private static final LinkedHashMap<String, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+    private static long size;
+    private static long hits;
+    private static long misses;
+
+    /** Returns the cached value of KIND named NAME, or null if it isn't cached. */
+    static synchronized <T> T get(String kind, String name, Class<T> type) {
+        Entry e = ENTRIES.get(kind + ":" + name);
+        if (e == null) {
+            misses += 1;
+            return null;
+        }
+        hits += 1;
+        return type.cast(e.value);
+    }
+
+    /** Caches VALUE as the value of KIND named NAME, about SIZE bytes big. */
+    static synchronized void put(String kind, String name, Object value, long size) {
+        Entry old = ENTRIES.put(kind + ":" + name, new Entry(value, size));
+        if (old != null) {
+            Cache.size -= old.size;
+        }
+        Cache.size += size;
+        long limit = Config.getInt("cache.size", DEFAULT_SIZE);
+        Iterator<Map.Entry<String, Entry>> oldest = ENTRIES.entrySet().iterator();
+        while (Cache.size > limit && oldest.hasNext()) {
+            Cache.size -= oldest.next().getValue().size;
+            oldest.remove();
+        }
+    }
+
+    /** Drops the value of KIND named NAME. */
+    static synchronized void invalidate(String kind, String name) {
+        Entry old = ENTRIES.remove(kind + ":" + name);
+        if (old != null) {
+            size -= old.size;
+        }
+    }
+
+    /** Drops every staging area and ref, the values that can change under the same name. */
+    static synchronized void invalidateMutable() {
+        Iterator<Map.Entry<String, Entry>> entries = ENTRIES.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Entry> e = entries.next();
+            if (e.getKey().startsWith(STAGING + ":") || e.getKey().startsWith(REF + ":")) {
+                size -= e.getValue().size;
+                entries.remove();
+            }
+        }
+    }
+
+    /** The hit and miss counts and current size of the cache. */
+    static synchronized String stats() {
+        return String.format("cache: %d hits, %d misses, %d entries, %d bytes",
+                hits, misses, ENTRIES.size(), size);
+    }
+}
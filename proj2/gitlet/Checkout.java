@@ -0,0 +1,106 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/** Brings the working directory to the files of another commit (checkout
+ *  of a branch, reset), touching only the files whose contents change.
+ *  The files of the CWD are compared with the target by blob id: files
+ *  the target doesn't have are deleted, files it has are only written if
+ *  their sha1ID differs, and files missing from the CWD are written.  The
+ *  sha1IDs of the CWD come from the index (see Index), so a file nobody
+ *  changed since it was checked out isn't even read.
+ *
+ *  Blobs are copied into the CWD by ObjectStore.copy, byte for byte (binary
+ *  files survive) and without holding them in memory.
+ *
+ *  With "checkout.stats" set to true (see Config) gitlet prints how many
+ *  files were added, modified, deleted and left alone, and how fast they
+ *  were written, in MB/s.
+ *
+ *  @author Ruth Frausto
+ */
+class Checkout {
+
+    /** How many files a checkout touched, and how. */
+    static class Result {
+        int added;
+        int modified;
+        int deleted;
+        int unchanged;
+        long bytes;
+        long nanos;
+
+        int touched() {
+            return added + modified + deleted;
+        }
+
+        /** Writes the blob SHA1ID to FILENAME in the CWD, counting its bytes and the time taken. */
+        void write(String sha1ID, String fileName) {
+            long start = System.nanoTime();
+            bytes += Checkout.write(sha1ID, fileName);
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public String toString() {
+            double mb = bytes / (1024.0 * 1024.0);
+            return String.format("checkout: %d files touched (%d added, %d modified, %d deleted), %d unchanged;"
+                    + " %.1f MB written at %.1f MB/s", touched(), added, modified, deleted, unchanged,
+                    mb, nanos == 0 ? 0.0 : mb / (nanos / 1e9));
+        }
+    }
+
+    /**
+     * makes the CWD, whose files are CWDFILES (all of them tracked or staged), hold
+     * exactly the files of TARGET (key: file name ---> value: sha1ID)
+     */
+    static Result apply(List<String> cwdFiles, Map<String, String> target) {
+        Result result = new Result();
+        List<String> kept = new ArrayList<>();
+        for (String file : cwdFiles) {
+            if (target.containsKey(file)) {
+                kept.add(file);
+            } else {
+                Utils.restrictedDelete(Utils.join(Repository.CWD, file));
+                Index.forget(file);
+                result.deleted += 1;
+            }
+        }
+
+        Map<String, String> current = Scan.hashAll(kept);
+        for (String file : kept) {
+            if (current.get(file).equals(target.get(file))) {
+                result.unchanged += 1;
+            } else {
+                result.write(target.get(file), file);
+                result.modified += 1;
+            }
+        }
+
+        HashSet<String> present = new HashSet<>(cwdFiles);
+        for (Map.Entry<String, String> e : target.entrySet()) {
+            if (!present.contains(e.getKey())) {
+                result.write(e.getValue(), e.getKey());
+                result.added += 1;
+            }
+        }
+
+        if (Boolean.parseBoolean(Config.get("checkout.stats", "false"))) {
+            System.err.println(result);
+        }
+        return result;
+    }
+
+    /**
+     * writes the blob SHA1ID to FILENAME in the CWD
+     * @return the number of bytes written
+     */
+    static long write(String sha1ID, String fileName) {
+        long bytes = ObjectStore.copy(Staging.BLOBS, sha1ID, Utils.join(Repository.CWD, fileName));
+        Index.record(fileName, sha1ID); //so status won't need to hash it again
+        return bytes;
+    }
+}
@@ -0,0 +1,159 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinTask;
+
+/** Content-defined chunking (FastCDC) of large files.
+ *  A file of at least "chunk.threshold" bytes (see Config) is cut into
+ *  chunks where its contents say so, not at fixed offsets: a rolling gear
+ *  hash of the bytes read is checked at every position, and a chunk ends
+ *  where its top bits are all zero.  An edit then only changes the chunks
+ *  around it; the rest are cut at the same places as before, get the same
+ *  sha1IDs, and are stored once for every version and file holding them.
+ *
+ *  Chunks are objects of .gitlet/chunks, saved (hashed and compressed) in
+ *  parallel on the Scan pool while the file is still being read.  The blob
+ *  itself is a CHUNKED object listing them (see ObjectStore), under the
+ *  sha1ID of the whole file, so nothing else needs to know it was chunked.
+ *
+ *  Chunk sizes average "chunk.averageSize" bytes, never less than a
+ *  quarter of that nor more than four times it.  Before the average size
+ *  a cut needs two more zero bits, after it two fewer, which keeps most
+ *  chunks close to the average (FastCDC's normalized chunking).
+ *
+ *  @author Ruth Frausto
+ */
+class Chunker {
+
+    static final File CHUNKS = Utils.join(Repository.GITLET_DIR, "chunks");
+
+    private static final int DEFAULT_THRESHOLD = 16 * 1024 * 1024;
+    private static final int DEFAULT_AVERAGE_SIZE = 256 * 1024;
+
+    /** random value of each byte, mixed into the hash; fixed, so files are always cut the same way */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x67656172L);
+        for (int i = 0; i < GEAR.length; i += 1) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** Returns true if FILE is big enough to be chunked. */
+    static boolean chunks(File file) {
+        return file.length() >= Config.getInt("chunk.threshold", DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * saves FILE as a blob of the object directory DIR made of chunks
+     * @return the sha1ID of FILE
+     */
+    static String store(File file, File dir) {
+        int average = Integer.highestOneBit(Config.getInt("chunk.averageSize", DEFAULT_AVERAGE_SIZE));
+        if (average < 64) {
+            throw Utils.error("Setting chunk.averageSize must be at least 64.");
+        }
+        int bits = Integer.numberOfTrailingZeros(average);
+        long smallMask = -1L << (64 - (bits + 2));
+        long largeMask = -1L << (64 - (bits - 2));
+        int min = average / 4;
+        int max = average * 4;
+        CHUNKS.mkdir();
+
+        MessageDigest md = newDigest();
+        List<String> ids = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        ArrayDeque<ForkJoinTask<String>> saving = new ArrayDeque<>();
+        int inFlight = 2 * Scan.parallelism(); //bounds the chunks held in memory
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            byte[] buf = new byte[max];
+            int filled = 0;
+            boolean eof = false;
+            while (true) {
+                while (!eof && filled < max) {
+                    int n = in.read(buf, filled, max - filled);
+                    if (n < 0) {
+                        eof = true;
+                    } else {
+                        filled += n;
+                    }
+                }
+                if (filled == 0) {
+                    break;
+                }
+                int cut = cut(buf, filled, min, average, max, smallMask, largeMask);
+                byte[] chunk = Arrays.copyOf(buf, cut);
+                md.update(chunk);
+                lengths.add(cut);
+                saving.add(Scan.fork(() -> save(chunk)));
+                if (saving.size() >= inFlight) {
+                    ids.add(saving.remove().join());
+                }
+                System.arraycopy(buf, cut, buf, 0, filled - cut);
+                filled -= cut;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        while (!saving.isEmpty()) {
+            ids.add(saving.remove().join());
+        }
+        String id = Pack.toHex(md.digest());
+        ObjectStore.writeChunked(dir, id, ids, lengths);
+        return id;
+    }
+
+    /** Saves CHUNK as an object of CHUNKS, unless an earlier version or file already did. */
+    private static String save(byte[] chunk) {
+        String id = Utils.sha1(chunk);
+        ObjectStore.write(CHUNKS, id, chunk);
+        return id;
+    }
+
+    /**
+     * the length of the chunk starting BUF[0, N): the first position after MIN where the gear
+     * hash has the bits of SMALLMASK (before AVERAGE) or of LARGEMASK (after it) all zero,
+     * or N or MAX, whichever comes first
+     */
+    private static int cut(byte[] buf, int n, int min, int average, int max, long smallMask, long largeMask) {
+        if (n <= min) {
+            return n;
+        }
+        int normal = Math.min(average, n);
+        int end = Math.min(max, n);
+        long hash = 0;
+        int i = min;
+        for (; i < normal; i += 1) {
+            hash = (hash << 1) + GEAR[buf[i] & 0xff];
+            if ((hash & smallMask) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < end; i += 1) {
+            hash = (hash << 1) + GEAR[buf[i] & 0xff];
+            if ((hash & largeMask) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+}
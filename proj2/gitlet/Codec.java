@@ -0,0 +1,142 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/** Helpers for gitlet's binary encodings of commits and staging files.
+ *  An encoding starts with a 4-byte signature and a version byte; after
+ *  that strings are an int length followed by their UTF-8 bytes and ids
+ *  are their 20 raw bytes.  Encoded objects are decoded in a single pass
+ *  over a ByteBuffer, with no reflection and no class descriptors.  When
+ *  only the start of an object is needed it can be read from a stream
+ *  instead, leaving the rest of the object unread.
+ *
+ *  @author Ruth Frausto
+ */
+class Codec {
+
+    /** A growing encoding. */
+    static class Writer {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        Writer(int signature, int version) {
+            putInt(signature);
+            putByte(version);
+        }
+
+        Writer putByte(int b) {
+            try {
+                out.writeByte(b);
+            } catch (IOException excp) {
+                throw Utils.error("Internal error encoding object.");
+            }
+            return this;
+        }
+
+        Writer putInt(int i) {
+            try {
+                out.writeInt(i);
+            } catch (IOException excp) {
+                throw Utils.error("Internal error encoding object.");
+            }
+            return this;
+        }
+
+        Writer putLong(long l) {
+            try {
+                out.writeLong(l);
+            } catch (IOException excp) {
+                throw Utils.error("Internal error encoding object.");
+            }
+            return this;
+        }
+
+        Writer putString(String s) {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            putInt(utf8.length);
+            bytes.write(utf8, 0, utf8.length);
+            return this;
+        }
+
+        Writer putId(String id) {
+            byte[] raw = Pack.toBytes(id);
+            if (raw == null) {
+                throw Utils.error("Not a sha1ID: %s.", id);
+            }
+            bytes.write(raw, 0, raw.length);
+            return this;
+        }
+
+        byte[] toBytes() {
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * returns a buffer positioned after the signature and version of CONTENTS,
+     * or null if CONTENTS doesn't start with SIGNATURE (it is in an older format)
+     */
+    static ByteBuffer open(byte[] contents, int signature, int version) {
+        if (contents.length < 5) {
+            return null;
+        }
+        ByteBuffer in = ByteBuffer.wrap(contents);
+        if (in.getInt() != signature) {
+            return null;
+        }
+        int v = in.get();
+        if (v != version) {
+            throw Utils.error("Unsupported object version %d.", v);
+        }
+        return in;
+    }
+
+    /**
+     * stream version of open: returns IN positioned after the signature and version,
+     * or null (with IN unread back to its start) if IN doesn't start with SIGNATURE
+     */
+    static DataInputStream open(PushbackInputStream in, int signature, int version) throws IOException {
+        byte[] header = in.readNBytes(5);
+        ByteBuffer start = ByteBuffer.wrap(header);
+        if (header.length < 5 || start.getInt() != signature) {
+            in.unread(header);
+            return null;
+        }
+        int v = start.get();
+        if (v != version) {
+            throw Utils.error("Unsupported object version %d.", v);
+        }
+        return new DataInputStream(in);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] utf8 = new byte[in.readInt()];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    static String readId(DataInputStream in) throws IOException {
+        byte[] raw = new byte[20];
+        in.readFully(raw);
+        return Pack.toHex(raw);
+    }
+
+    static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        String s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return s;
+    }
+
+    static String getId(ByteBuffer in) {
+        byte[] raw = new byte[20];
+        in.get(raw);
+        return Pack.toHex(raw);
+    }
+}
@@ -1,5 +1,9 @@
 package gitlet;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.io.Serializable;
 import java.util.*;
 
@@ -7,12 +11,29 @@ import java.util.*;
 /** Represents a gitlet commit object.
  *  does at a high level.
  *
+ *  Commits are saved in gitlet's own binary encoding (see encode) and their
+ *  sha1ID is the sha1 of that encoding.  Commits saved by older versions
+ *  are java serialized; they are still read, and "migrate" re-encodes them.
+ *
+ *  History commands (log, global-log, the commit-graph) only need a
+ *  commit's header -- message, timestamp and parents -- so header() stops
+ *  reading there; the tree, and from it the files, are read the first time
+ *  they are asked for.
+ *
  *  @author Ruth Frausto
  */
 public class Commit implements Serializable {
 
+    /** Pinned to the id the class had before trees, so older commits still deserialize. */
+    private static final long serialVersionUID = -5877380946463294218L;
 
     static final File COMMITS = Utils.join(Repository.GITLET_DIR, "commits");
+
+    private static final int SIGNATURE = 0x47434d54; // "GCMT"
+    private static final int VERSION = 1;
+    /** flag of a migrated commit: its sha1ID is the one it had when it was java serialized */
+    private static final int LEGACY_ID = 1;
+
     /** The message of this Commit. */
     private String message;
     private Date timeStamp;
@@ -24,9 +45,33 @@ public class Commit implements Serializable {
     /**
      * instance variable
      * key: file name ----> value: sha1ID
+     * only set in commits made before trees; newer commits keep their files in treeID
      */
     private HashMap<String, String> filesInCommit;
 
+    /** sha1ID of the Tree holding the files of this commit. */
+    private String treeID;
+
+    /** tree written for the files of a commit made before trees */
+    private transient String legacyTreeID;
+
+    /**
+     * sha1ID of this commit: the sha1 of its encoding, computed once when the commit is made,
+     * or the id it was read under; getSha1ID never re-encodes
+     * (a commit from before the binary encoding wouldn't even encode back to its id)
+     */
+    private transient String id;
+
+    /** true for a commit migrated from java serialization (see LEGACY_ID) */
+    private transient boolean legacyID;
+
+    /** true for a commit read by header(): its treeID hasn't been read yet */
+    private transient boolean headerOnly;
+
+
+    /** used by decode */
+    private Commit() {
+    }
 
     /**
      * constructor for initial commit
@@ -35,7 +80,8 @@ public class Commit implements Serializable {
         this.message = "initial commit";
         this.timeStamp = new Date(0);
         this.parentID = null;
-        this.filesInCommit = h.getStagedFiles();
+        this.treeID = Tree.write(h.getStagedFiles());
+        this.id = Utils.sha1(encode());
     }
 
     public Commit(String message, String firstParent, String secondParent,
@@ -44,7 +90,8 @@ public class Commit implements Serializable {
         this.timeStamp = new Date();
         this.firstParent = firstParent;
         this.secondParent = secondParent;
-        this.filesInCommit = checkParentFiles(firstParent, filesToCommit, filesToRemove);
+        this.treeID = checkParentFiles(firstParent, filesToCommit, filesToRemove);
+        this.id = Utils.sha1(encode());
     }
 
     public Commit(String message, String parentID, HashMap<String, String> filesToCommit,
@@ -52,43 +99,61 @@ public class Commit implements Serializable {
         this.message = message;
         this.timeStamp = new Date();
         this.parentID = parentID;
-        this.filesInCommit = checkParentFiles(parentID, filesToCommit, filesToRemove);
+        this.treeID = checkParentFiles(parentID, filesToCommit, filesToRemove);
+        this.id = Utils.sha1(encode());
     }
 
     public HashMap<String, String> getFilesInCommit() {
-        return this.filesInCommit;
+        readRest();
+        if (this.filesInCommit != null) {
+            return this.filesInCommit;
+        }
+        //kept in the Cache under the tree, not on this commit, so its size is counted against cache.size
+        @SuppressWarnings("unchecked")
+        HashMap<String, String> manifest = Cache.get(Cache.MANIFEST, this.treeID, HashMap.class);
+        if (manifest == null) {
+            manifest = Tree.files(this.treeID);
+            Cache.put(Cache.MANIFEST, this.treeID, manifest, 64 + 160L * manifest.size());
+        }
+        return manifest;
     }
 
-    private HashMap<String, String> checkParentFiles(String parentCommitID,
-                                                     HashMap<String, String> filesInCommit, LinkedList<String> filesToRemove) {
-        Commit parentCommit = fromFile(parentCommitID); //getting the parent commit object
-
-        if (!parentCommit.getFilesInCommit().isEmpty()) {
-            //getting the files that were commited in the parent
-            HashMap<String, String> parentFiles = parentCommit.getFilesInCommit();
-            Set<String> keys = filesInCommit.keySet(); //getting the keys to the files staged for addition
-            Set<String> parentKeys = parentFiles.keySet();
-            for (String key: parentKeys) {
-                if (filesInCommit.containsKey(key)) {
-                    //comparing sha1ID of the same file name in parent and staged file
-                    if (parentFiles.get(key).equals(filesInCommit.get(key))) {
-                        continue; //do not update anything
-                    }
-                } else {
-                    filesInCommit.put(key, parentFiles.get(key));
-                }
-            }
+    /**
+     * sha1ID of the tree of this commit
+     * a commit made before trees gets its tree written the first time this is asked
+     */
+    public String getTreeID() {
+        readRest();
+        if (this.treeID != null) {
+            return this.treeID;
         }
-        if (!filesToRemove.isEmpty()) {
-            for (String s : filesToRemove) {
-                if (filesInCommit.containsKey(s)) {
-                    filesInCommit.remove(s);
-                }
-            }
+        if (this.legacyTreeID == null) {
+            this.legacyTreeID = Tree.write(this.filesInCommit);
         }
+        return this.legacyTreeID;
+    }
 
+    /** Reads the part of a commit read by header() that was left out. */
+    private void readRest() {
+        if (this.headerOnly) {
+            try (InputStream stored = ObjectStore.open(COMMITS, this.id)) {
+                this.treeID = decode(stored, false).treeID;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            this.headerOnly = false;
+        }
+    }
 
-        return filesInCommit; //taking care of files staged for removal
+    /**
+     * the parent's tree with the staged files put in and the files staged for removal taken out;
+     * only the buckets holding those files are rewritten, the rest is shared with the parent
+     * @return the sha1ID of the new tree
+     */
+    private String checkParentFiles(String parentCommitID,
+                                    HashMap<String, String> filesInCommit, LinkedList<String> filesToRemove) {
+        Commit parentCommit = fromFile(parentCommitID); //getting the parent commit object
+        return Tree.update(parentCommit.getTreeID(), filesInCommit, filesToRemove);
     }
 
     /**
@@ -119,38 +184,158 @@ public class Commit implements Serializable {
     }
 
     public String getSha1ID() {
-        byte[] byteRep = Utils.serialize(this);
-        String sha1ID = Utils.sha1( byteRep);
-        return sha1ID;
+        return this.id;
+    }
 
+    /**
+     * returns true if the encoding of this commit still hashes to its sha1ID
+     * commits with a legacy id (java serialized, or migrated from it) can't be recomputed, so they always pass
+     */
+    public boolean verify() {
+        if (this.filesInCommit != null || this.legacyID) {
+            return true;
+        }
+        return Utils.sha1(encode()).equals(this.id);
     }
 
+    /**
+     * the binary encoding of this commit:
+     * signature, version, flags, message, timestamp (ms), parent count, parent ids, tree id
+     */
+    byte[] encode() {
+        List<String> parents = getParents();
+        Codec.Writer out = new Codec.Writer(SIGNATURE, VERSION);
+        out.putByte(this.filesInCommit != null || this.legacyID ? LEGACY_ID : 0);
+        out.putString(this.message);
+        out.putLong(this.timeStamp.getTime());
+        out.putByte(parents.size());
+        for (String p : parents) {
+            out.putId(p);
+        }
+        out.putId(getTreeID());
+        return out.toBytes();
+    }
+
+    /**
+     * reads a commit from STORED, stopping after the parents if HEADERONLY
+     * a java serialized commit can't be read in part, so it is always read whole
+     */
+    private static Commit decode(InputStream stored, boolean headerOnly) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(stored, 5);
+        DataInputStream in = Codec.open(pushback, SIGNATURE, VERSION);
+        if (in == null) {
+            return Utils.deserialize(pushback.readAllBytes(), Commit.class);
+        }
+        Commit c = new Commit();
+        c.legacyID = (in.readByte() & LEGACY_ID) != 0;
+        c.message = Codec.readString(in);
+        c.timeStamp = new Date(in.readLong());
+        int parents = in.readByte();
+        if (parents == 1) {
+            c.parentID = Codec.readId(in);
+        } else if (parents == 2) {
+            c.firstParent = Codec.readId(in);
+            c.secondParent = Codec.readId(in);
+        }
+        if (headerOnly) {
+            c.headerOnly = true;
+        } else {
+            c.treeID = Codec.readId(in);
+        }
+        return c;
+    }
+
+    /**
+     * reads only the message, timestamp and parents of commit SHA1ID;
+     * its tree is read later, if it's ever needed
+     */
+    public static Commit header(String sha1ID) {
+        Commit c = Cache.get(Cache.COMMIT, sha1ID, Commit.class);
+        return c != null ? c : load(sha1ID, true);
+    }
+
+    /**
+     * reads commit SHA1ID (only its header if HEADERONLY) and caches it
+     * with "commit.verify" set to true every commit is read whole and checked against its id
+     */
+    private static Commit load(String sha1ID, boolean headerOnly) {
+        boolean verify = Boolean.parseBoolean(Config.get("commit.verify", "false"));
+        try (InputStream stored = ObjectStore.open(COMMITS, sha1ID)) {
+            Commit c = decode(stored, headerOnly && !verify);
+            c.id = sha1ID;
+            if (verify && !c.verify()) {
+                throw Utils.error("Commit %s is corrupt.", sha1ID);
+            }
+            Cache.put(Cache.COMMIT, sha1ID, c, c.cacheSize());
+            return c;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Rough number of bytes this commit takes in memory, for the Cache. */
+    private long cacheSize() {
+        long size = 256 + 2L * this.message.length();
+        if (this.filesInCommit != null) {
+            size += 160L * this.filesInCommit.size();
+        }
+        return size;
+    }
 
     /**
-     * takes in a sha1ID and reads the object from the commits directory
+     * takes in a sha1ID and reads the object from the commits directory (loose or packed)
      * @param fileIdentifier
      * @return
      */
     public static Commit fromFile(String fileIdentifier) {
-        File pathToCommit = Utils.join(COMMITS, fileIdentifier); //path to commit
-        Commit c = Utils.readObject(pathToCommit, Commit.class);
-        return c;
+        Commit c = Cache.get(Cache.COMMIT, fileIdentifier, Commit.class);
+        return c != null ? c : load(fileIdentifier, false);
     }
     /**
      * save commit in "commits" directory
      * @param obj
      */
     public static void saveCommit(Commit obj) {
-        String sha1ID = obj.getSha1ID();
-        //saving object in the commits directory
-        File g = Utils.join(COMMITS, sha1ID);
-        Utils.writeObject(g, obj);
+        //saving object in the commits directory, under the id it got when it was made
+        ObjectStore.write(COMMITS, obj.id, obj.encode());
+        Cache.put(Cache.COMMIT, obj.id, obj, obj.cacheSize());
 
     }
 
+    /**
+     * rewrites the java serialized commit SHA1ID in the binary encoding, keeping its sha1ID
+     * @return false if it already was in the binary encoding
+     */
+    static boolean migrate(String sha1ID) {
+        byte[] contents = ObjectStore.read(COMMITS, sha1ID);
+        if (Codec.open(contents, SIGNATURE, VERSION) != null) {
+            return false;
+        }
+        Commit c = Utils.deserialize(contents, Commit.class);
+        ObjectStore.replace(COMMITS, sha1ID, c.encode());
+        return true;
+    }
+
     public String getParentSha1ID() {
         return this.parentID;
     }
 
+    /**
+     * the sha1IDs of the parents of this commit, first parent first:
+     * none for the initial commit, two for a merge commit
+     */
+    public List<String> getParents() {
+        List<String> parents = new ArrayList<>(2);
+        if (this.parentID != null) {
+            parents.add(this.parentID);
+        } else if (this.firstParent != null) {
+            parents.add(this.firstParent);
+        }
+        if (this.secondParent != null) {
+            parents.add(this.secondParent);
+        }
+        return parents;
+    }
+
 
 }
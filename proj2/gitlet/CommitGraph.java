@@ -0,0 +1,432 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** The commit-graph: parents, timestamp and generation number of every
+ *  commit in a compact table, so history can be walked without reading
+ *  (and deserializing) a single commit object.
+ *
+ *  .gitlet/commit-graph holds the bulk of the commits, memory mapped:
+ *      header  -- "CGPH", version, commit count
+ *      fanout  -- 256 ints, as in a pack index
+ *      ids     -- the sorted 20-byte commit ids
+ *      data    -- per commit: first and second parent (as positions in
+ *                 ids, -1 for none), timestamp, generation
+ *  .gitlet/commit-graph-tail gets one fixed-size record appended per new
+ *  commit (parents as full ids), so committing never rewrites the table;
+ *  a record torn by a crash is cut off before the next one is appended.
+ *  Once the tail holds "commitGraph.tailLimit" commits it is folded into
+ *  a new table.  A repository without a graph (or missing a commit in it)
+ *  gets its graph built from the commit objects the first time it's used.
+ *
+ *  The generation of a root commit is 1, of any other commit one more
+ *  than the largest generation of its parents: a commit can only be an
+ *  ancestor of commits with a larger generation.
+ *
+ *  Both the table and the tail are sorted by id, so the commits an
+ *  abbreviated id could mean, and the shortest abbreviation of an id that
+ *  no other commit shares, are found by binary search (matching, abbrev).
+ *
+ *  @author Ruth Frausto
+ */
+class CommitGraph {
+
+    static final File GRAPH = Utils.join(Repository.GITLET_DIR, "commit-graph");
+    static final File TAIL = Utils.join(Repository.GITLET_DIR, "commit-graph-tail");
+
+    private static final int SIGNATURE = 0x43475048; // "CGPH"
+    private static final int VERSION = 1;
+    private static final int ID_BYTES = 20;
+    private static final int FANOUT_START = 12;
+    private static final int IDS_START = FANOUT_START + 256 * 4;
+    private static final int DATA_BYTES = 4 + 4 + 8 + 4;
+    private static final int TAIL_RECORD = 3 * ID_BYTES + 8 + 4;
+    private static final int DEFAULT_TAIL_LIMIT = 1024;
+    private static final byte[] NO_ID = new byte[ID_BYTES];
+
+    /** A commit of the graph. */
+    static class Node {
+        final String id;
+        final String firstParent;
+        final String secondParent;
+        final long time;
+        final int generation;
+
+        Node(String id, String firstParent, String secondParent, long time, int generation) {
+            this.id = id;
+            this.firstParent = firstParent;
+            this.secondParent = secondParent;
+            this.time = time;
+            this.generation = generation;
+        }
+
+        /** The parents of this commit, first parent first. */
+        List<String> parents() {
+            List<String> parents = new ArrayList<>(2);
+            if (firstParent != null) {
+                parents.add(firstParent);
+            }
+            if (secondParent != null) {
+                parents.add(secondParent);
+            }
+            return parents;
+        }
+    }
+
+    private static MappedByteBuffer table;
+    private static int count;
+    /** commits of the tail, key: sha1ID ---> value: node */
+    private static TreeMap<String, Node> tail;
+
+    /** Returns the graph node of commit ID, building the graph first if it doesn't know ID. */
+    static Node node(String id) {
+        load();
+        Node n = find(id);
+        if (n == null) {
+            rebuild();
+            n = find(id);
+            if (n == null) {
+                throw Utils.error("No commit %s in the commit graph.", id);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * adds the new commit C to the graph by appending one record to the tail;
+     * its parents are already in the graph since they were committed first
+     */
+    static void add(Commit c) {
+        load();
+        String id = c.getSha1ID();
+        if (find(id) != null) {
+            return;
+        }
+        List<String> parents = c.getParents();
+        for (String p : parents) {
+            if (find(p) == null) {
+                rebuild(); //C is already saved, so building from the commit objects covers it too
+                return;
+            }
+        }
+        String first = parents.size() > 0 ? parents.get(0) : null;
+        String second = parents.size() > 1 ? parents.get(1) : null;
+        int generation = 1;
+        for (String p : parents) {
+            generation = Math.max(generation, node(p).generation + 1);
+        }
+        Node n = new Node(id, first, second, c.getTimeStamp().getTime(), generation);
+        ByteBuffer record = ByteBuffer.allocate(TAIL_RECORD);
+        record.put(Pack.toBytes(id));
+        record.put(first == null ? NO_ID : Pack.toBytes(first));
+        record.put(second == null ? NO_ID : Pack.toBytes(second));
+        record.putLong(n.time).putInt(n.generation);
+        try (FileChannel ch = FileChannel.open(TAIL.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long end = ch.size() - ch.size() % TAIL_RECORD; //cuts a record torn by a crash
+            ch.truncate(end);
+            record.flip();
+            while (record.hasRemaining()) {
+                ch.write(record, end + record.position());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        tail.put(id, n);
+        if (tail.size() >= Config.getInt("commitGraph.tailLimit", DEFAULT_TAIL_LIMIT)) {
+            compact();
+        }
+    }
+
+    /**
+     * returns the ids of the commits starting with PREFIX, at most LIMIT of them
+     * (two are enough to know PREFIX is ambiguous)
+     */
+    static List<String> matching(String prefix, int limit) {
+        if (!GRAPH.isFile() && !TAIL.isFile()) {
+            rebuild(); //a repository made before the graph
+        }
+        load();
+        List<String> ids = new ArrayList<>();
+        for (String id : tail.tailMap(prefix).keySet()) {
+            if (!id.startsWith(prefix) || ids.size() == limit) {
+                break;
+            }
+            ids.add(id);
+        }
+        for (int pos = lowerBound(prefix); pos < count && ids.size() < limit; pos += 1) {
+            String id = Pack.toHex(idAt(pos));
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    /**
+     * returns the shortest prefix of the commit ID, at least MIN digits long, that no other
+     * commit starts with: one digit more than ID shares with its closest neighbours in id order
+     */
+    static String abbrev(String id, int min) {
+        load();
+        int shared = Math.max(sharedDigits(id, tail.lowerKey(id)), sharedDigits(id, tail.higherKey(id)));
+        int pos = lowerBound(id);
+        if (pos > 0) {
+            shared = Math.max(shared, sharedDigits(id, Pack.toHex(idAt(pos - 1))));
+        }
+        if (pos < count && Pack.toHex(idAt(pos)).equals(id)) {
+            pos += 1;
+        }
+        if (pos < count) {
+            shared = Math.max(shared, sharedDigits(id, Pack.toHex(idAt(pos))));
+        }
+        return id.substring(0, Math.min(id.length(), Math.max(min, shared + 1)));
+    }
+
+    private static int sharedDigits(String a, String b) {
+        if (b == null) {
+            return 0;
+        }
+        int i = 0;
+        while (i < a.length() && i < b.length() && a.charAt(i) == b.charAt(i)) {
+            i += 1;
+        }
+        return i;
+    }
+
+    /** The position of the first id of the table that is not less than the hex string PREFIX. */
+    private static int lowerBound(String prefix) {
+        if (table == null) {
+            return 0;
+        }
+        int lo = 0;
+        int hi = count;
+        if (prefix.length() >= 2 && prefix.substring(0, 2).matches("[0-9a-f]{2}")) {
+            //only the slice of the fanout table the first byte points to
+            int first = Integer.parseInt(prefix.substring(0, 2), 16);
+            lo = first == 0 ? 0 : table.getInt(FANOUT_START + (first - 1) * 4);
+            hi = table.getInt(FANOUT_START + first * 4);
+        }
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Pack.toHex(idAt(mid)).compareTo(prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Folds the tail into a freshly written table. */
+    static void compact() {
+        load();
+        TreeMap<String, Node> all = new TreeMap<>(tail);
+        for (int i = 0; i < count; i += 1) {
+            Node n = nodeAt(i);
+            all.put(n.id, n);
+        }
+        write(all);
+    }
+
+    /**
+     * builds the whole graph from the commit objects
+     * (for repositories made before the graph existed); generations are computed
+     * parents first with an explicit stack, since histories can be very deep
+     */
+    static void rebuild() {
+        HashMap<String, Commit> commits = new HashMap<>();
+        for (String id : ObjectStore.list(Commit.COMMITS)) {
+            commits.put(id, Commit.header(id));
+        }
+        TreeMap<String, Node> all = new TreeMap<>();
+        for (String start : commits.keySet()) {
+            Deque<String> stack = new ArrayDeque<>();
+            stack.push(start);
+            while (!stack.isEmpty()) {
+                String id = stack.peek();
+                if (all.containsKey(id)) {
+                    stack.pop();
+                    continue;
+                }
+                Commit c = commits.get(id);
+                List<String> parents = c.getParents();
+                boolean ready = true;
+                int generation = 1;
+                for (String p : parents) {
+                    Node pn = all.get(p);
+                    if (pn == null) {
+                        stack.push(p);
+                        ready = false;
+                    } else {
+                        generation = Math.max(generation, pn.generation + 1);
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    all.put(id, new Node(id, parents.size() > 0 ? parents.get(0) : null,
+                            parents.size() > 1 ? parents.get(1) : null,
+                            c.getTimeStamp().getTime(), generation));
+                }
+            }
+        }
+        write(all);
+    }
+
+    /** Writes ALL (sorted by id) as the new table and drops the tail. */
+    private static void write(TreeMap<String, Node> all) {
+        Map<String, Integer> position = new HashMap<>();
+        int i = 0;
+        for (String id : all.keySet()) {
+            position.put(id, i);
+            i += 1;
+        }
+        int[] fanout = new int[256];
+        for (String id : all.keySet()) {
+            fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+        }
+        try {
+            Path tmp = Files.createTempFile(Repository.GITLET_DIR.toPath(), "commit-graph-", "");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(SIGNATURE);
+                out.writeInt(VERSION);
+                out.writeInt(all.size());
+                int running = 0;
+                for (int b = 0; b < 256; b += 1) {
+                    running += fanout[b];
+                    out.writeInt(running);
+                }
+                for (String id : all.keySet()) {
+                    out.write(Pack.toBytes(id));
+                }
+                for (Node n : all.values()) {
+                    out.writeInt(n.firstParent == null ? -1 : position.get(n.firstParent));
+                    out.writeInt(n.secondParent == null ? -1 : position.get(n.secondParent));
+                    out.writeLong(n.time);
+                    out.writeInt(n.generation);
+                }
+            }
+            Files.move(tmp, GRAPH.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(TAIL.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        table = null;
+        tail = null;
+        load();
+    }
+
+    /** Forgets the table and the tail, so the next use reads them again. */
+    static void unload() {
+        table = null;
+        tail = null;
+    }
+
+    /** Maps the table and reads the tail, once per process. */
+    private static void load() {
+        if (tail != null) {
+            return;
+        }
+        table = null;
+        count = 0;
+        tail = new TreeMap<>();
+        if (GRAPH.isFile()) {
+            try (FileChannel ch = FileChannel.open(GRAPH.toPath(), StandardOpenOption.READ)) {
+                table = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            if (table.getInt(0) != SIGNATURE || table.getInt(4) != VERSION) {
+                throw Utils.error("Corrupt commit graph.");
+            }
+            count = table.getInt(8);
+        }
+        if (TAIL.isFile()) {
+            ByteBuffer records = ByteBuffer.wrap(Utils.readContents(TAIL));
+            byte[] id = new byte[ID_BYTES];
+            while (records.remaining() >= TAIL_RECORD) { //a torn last record is ignored (add cuts it)
+                records.get(id);
+                String sha1ID = Pack.toHex(id);
+                String first = parentId(records);
+                String second = parentId(records);
+                long time = records.getLong();
+                int generation = records.getInt();
+                tail.put(sha1ID, new Node(sha1ID, first, second, time, generation));
+            }
+        }
+    }
+
+    private static String parentId(ByteBuffer records) {
+        byte[] id = new byte[ID_BYTES];
+        records.get(id);
+        return Arrays.equals(id, NO_ID) ? null : Pack.toHex(id);
+    }
+
+    private static Node find(String id) {
+        Node n = tail.get(id);
+        if (n != null) {
+            return n;
+        }
+        int pos = position(id);
+        return pos < 0 ? null : nodeAt(pos);
+    }
+
+    /** Binary search of ID in the table, inside its fanout slice; -1 if it isn't there. */
+    private static int position(String id) {
+        byte[] key = Pack.toBytes(id);
+        if (key == null || table == null) {
+            return -1;
+        }
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : table.getInt(FANOUT_START + (first - 1) * 4);
+        int hi = table.getInt(FANOUT_START + first * 4) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = Arrays.compareUnsigned(idAt(mid), key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] idAt(int pos) {
+        byte[] id = new byte[ID_BYTES];
+        table.get(IDS_START + pos * ID_BYTES, id);
+        return id;
+    }
+
+    private static Node nodeAt(int pos) {
+        int data = IDS_START + count * ID_BYTES + pos * DATA_BYTES;
+        int first = table.getInt(data);
+        int second = table.getInt(data + 4);
+        return new Node(Pack.toHex(idAt(pos)),
+                first < 0 ? null : Pack.toHex(idAt(first)),
+                second < 0 ? null : Pack.toHex(idAt(second)),
+                table.getLong(data + 8), table.getInt(data + 16));
+    }
+}
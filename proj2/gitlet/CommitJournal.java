@@ -0,0 +1,225 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+/** The commit journal: every commit of the repository, in the order they
+ *  were made, so global-log reads one file sequentially instead of listing
+ *  the commits directory and opening every commit in it.
+ *      header  -- "GCJL", version
+ *      record  -- message length, message (UTF-8), timestamp, 20-byte
+ *                 commit id, record length
+ *  Each record ends with its own length, so the journal can be read
+ *  backwards (newest first) just as cheaply as forwards.  A torn last
+ *  record (a command that stopped while appending) is cut off before the
+ *  next one is added.  Repositories made before the journal get it built
+ *  from their commit objects the first time it's needed.
+ *
+ *  @author Ruth Frausto
+ */
+class CommitJournal {
+
+    static final File JOURNAL = Utils.join(Repository.GITLET_DIR, "commit-journal");
+
+    private static final int SIGNATURE = 0x47434a4c; // "GCJL"
+    private static final int VERSION = 1;
+    private static final int HEADER = 8;
+    private static final int ID_BYTES = 20;
+    /** bytes of a record besides its message */
+    private static final int FIXED_BYTES = 4 + 8 + ID_BYTES + 4;
+    private static final int BLOCK = 64 * 1024;
+
+    /** A commit of the journal. */
+    static class Entry {
+        final String id;
+        final Date timeStamp;
+        final String message;
+
+        Entry(String id, Date timeStamp, String message) {
+            this.id = id;
+            this.timeStamp = timeStamp;
+            this.message = message;
+        }
+    }
+
+    /** Something done with each entry read; returns false to stop reading. */
+    interface Visitor {
+        boolean visit(Entry e);
+    }
+
+    /** Appends the new commit C (already saved) to the journal. */
+    static void add(Commit c) {
+        if (!JOURNAL.isFile()) {
+            create(); //built from the commit objects, C included
+            return;
+        }
+        ByteBuffer record = encode(new Entry(c.getSha1ID(), c.getTimeStamp(), c.getMessage()));
+        try (FileChannel journal = FileChannel.open(JOURNAL.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            journal.truncate(validEnd(journal));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Transaction.append(JOURNAL, record.array());
+    }
+
+    /** Reads the journal oldest first, handing each entry to VISITOR until it returns false. */
+    static void forward(Visitor visitor) {
+        create();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(JOURNAL.toPath()), BLOCK))) {
+            in.skipNBytes(HEADER);
+            while (true) {
+                Entry e;
+                try {
+                    byte[] utf8 = new byte[in.readInt()];
+                    in.readFully(utf8);
+                    Date timeStamp = new Date(in.readLong());
+                    byte[] id = new byte[ID_BYTES];
+                    in.readFully(id);
+                    in.readInt();
+                    e = new Entry(Pack.toHex(id), timeStamp, new String(utf8, StandardCharsets.UTF_8));
+                } catch (EOFException excp) {
+                    return; //the end, or a torn last record
+                }
+                if (!visitor.visit(e)) {
+                    return;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * reads the journal newest first, handing each entry to VISITOR until it returns false;
+     * the file is read backwards in blocks, each record found through the length it ends with
+     */
+    static void backward(Visitor visitor) {
+        create();
+        try (FileChannel journal = FileChannel.open(JOURNAL.toPath(), StandardOpenOption.READ)) {
+            long end = validEnd(journal);
+            ByteBuffer window = ByteBuffer.allocate(0);
+            long windowStart = end;
+            while (end > HEADER) {
+                if (end - 4 < windowStart) {
+                    windowStart = Math.max(HEADER, end - BLOCK);
+                    window = readAt(journal, windowStart, (int) (end - windowStart));
+                }
+                int length = window.getInt((int) (end - 4 - windowStart));
+                long start = end - length;
+                if (start < windowStart) {
+                    windowStart = Math.max(HEADER, Math.min(start, end - BLOCK));
+                    window = readAt(journal, windowStart, (int) (end - windowStart));
+                }
+                if (!visitor.visit(entryAt(window, (int) (start - windowStart)))) {
+                    return;
+                }
+                end = start;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Creates the journal if the repository doesn't have one yet, from its commits ordered by time. */
+    static void create() {
+        if (JOURNAL.isFile()) {
+            return;
+        }
+        List<Entry> entries = new ArrayList<>();
+        if (Commit.COMMITS.isDirectory()) {
+            for (String id : ObjectStore.list(Commit.COMMITS)) {
+                Commit c = Commit.header(id);
+                entries.add(new Entry(id, c.getTimeStamp(), c.getMessage()));
+            }
+        }
+        entries.sort(Comparator.comparing((Entry e) -> e.timeStamp).thenComparing(e -> e.id));
+        try {
+            Path tmp = Files.createTempFile(Repository.GITLET_DIR.toPath(), "commit-journal-", "");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(SIGNATURE);
+                out.writeInt(VERSION);
+                for (Entry e : entries) {
+                    out.write(encode(e).array());
+                }
+            }
+            Files.move(tmp, JOURNAL.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private static ByteBuffer encode(Entry e) {
+        byte[] utf8 = e.message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(utf8.length + FIXED_BYTES);
+        record.putInt(utf8.length).put(utf8).putLong(e.timeStamp.getTime()).put(Pack.toBytes(e.id));
+        record.putInt(record.capacity());
+        return record.flip();
+    }
+
+    private static Entry entryAt(ByteBuffer window, int at) {
+        ByteBuffer record = window.duplicate().position(at);
+        byte[] utf8 = new byte[record.getInt()];
+        record.get(utf8);
+        Date timeStamp = new Date(record.getLong());
+        byte[] id = new byte[ID_BYTES];
+        record.get(id);
+        return new Entry(Pack.toHex(id), timeStamp, new String(utf8, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * returns the end of the last whole record of JOURNAL: its size, unless the last record
+     * was torn, in which case the records are walked from the start to find where they stop
+     */
+    private static long validEnd(FileChannel journal) throws IOException {
+        long size = journal.size();
+        if (size == HEADER) {
+            return size;
+        }
+        if (size > HEADER + FIXED_BYTES) {
+            int length = readAt(journal, size - 4, 4).getInt();
+            long start = size - length;
+            if (length >= FIXED_BYTES && start >= HEADER
+                    && readAt(journal, start, 4).getInt() + FIXED_BYTES == length) {
+                return size;
+            }
+        }
+        long end = HEADER;
+        while (end + 4 <= size) {
+            long next = end + readAt(journal, end, 4).getInt() + FIXED_BYTES;
+            if (next > size) {
+                break;
+            }
+            end = next;
+        }
+        return end;
+    }
+
+    private static ByteBuffer readAt(FileChannel ch, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, position + buf.position()) < 0) {
+                throw Utils.error("Corrupt commit journal.");
+            }
+        }
+        return buf.flip();
+    }
+}
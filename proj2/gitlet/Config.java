@@ -0,0 +1,58 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/** Tunable settings of a repository.
+ *  A setting KEY is looked up as the java system property gitlet.KEY
+ *  (java -Dgitlet.KEY=VALUE gitlet.Main ...), then in .gitlet/config,
+ *  which holds KEY=VALUE lines, and otherwise falls back to a default.
+ *
+ *  @author Ruth Frausto
+ */
+class Config {
+
+    static final File CONFIG = Utils.join(Repository.GITLET_DIR, "config");
+
+    /** Contents of .gitlet/config, read the first time a setting is asked for. */
+    private static Properties settings;
+
+    /** Returns the value of setting KEY, or DEFAULTVALUE if it isn't set. */
+    static String get(String key, String defaultValue) {
+        String value = System.getProperty("gitlet." + key);
+        if (value != null) {
+            return value;
+        }
+        return settings().getProperty(key, defaultValue);
+    }
+
+    /** Returns the integer setting KEY, or DEFAULTVALUE if it isn't set. */
+    static int getInt(String key, int defaultValue) {
+        String value = get(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException excp) {
+            throw Utils.error("Setting %s must be a number, not %s.", key, value);
+        }
+    }
+
+    private static synchronized Properties settings() {
+        if (settings == null) {
+            settings = new Properties();
+            if (CONFIG.isFile()) {
+                try (Reader in = Files.newBufferedReader(CONFIG.toPath())) {
+                    settings.load(in);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        return settings;
+    }
+}
@@ -0,0 +1,139 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/** gitlet daemon: one long-lived process that runs the commands of a
+ *  repository, so they don't each pay for starting a JVM and reading HEAD,
+ *  the branches, the staging area and the objects they need from scratch.
+ *  The caches (see Cache), the commit-graph and the packs stay loaded
+ *  between commands.
+ *
+ *  It listens on the unix-domain socket .gitlet/daemon.sock and runs one
+ *  command at a time.  A request is the arguments of a command separated
+ *  by NUL bytes, ended by closing the sending side; the reply is what the
+ *  command prints, ended by closing the connection.  While the daemon
+ *  runs, gitlet.Main hands every command over to it (forward), so it is
+ *  the only process changing the repository.  That still costs a JVM
+ *  start per command (about a third of a second); client.c (make client)
+ *  speaks the same protocol without one, in a few milliseconds, and so
+ *  does e.g.  printf 'log' | nc -UN .gitlet/daemon.sock.
+ *  "gitlet daemon stop" stops it.
+ *
+ *  Like gitlet.Main before a command, it recovers an interrupted
+ *  transaction (see Transaction) when it starts, and again after any
+ *  command that fails.
+ *
+ *  @author Ruth Frausto
+ */
+class Daemon {
+
+    static final File SOCKET = Utils.join(Repository.GITLET_DIR, "daemon.sock");
+
+    /** Serves commands until asked to stop. */
+    static void serve() {
+        if (forward(new String[] {"daemon", "ping"})) {
+            return; //one is already running; it said so
+        }
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(SOCKET.toPath());
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            Files.deleteIfExists(SOCKET.toPath()); //left by a daemon that was killed
+            Transaction.recover(); //finishes a command that process stopped in
+            server.bind(address);
+            boolean running = true;
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    String[] args = new String(Channels.newInputStream(client).readAllBytes(),
+                            StandardCharsets.UTF_8).split("\0");
+                    PrintStream reply = new PrintStream(new BufferedOutputStream(
+                            Channels.newOutputStream(client)), false, StandardCharsets.UTF_8);
+                    System.setOut(reply);
+                    System.setErr(reply);
+                    try {
+                        running = run(args);
+                    } finally {
+                        System.setOut(out);
+                        System.setErr(err);
+                        reply.flush();
+                    }
+                } catch (IOException excp) {
+                    err.println(excp.getMessage()); //a client went away; keep serving the others
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            SOCKET.delete();
+        }
+    }
+
+    /**
+     * runs the command ARGS for a client
+     * @return false if it asked the daemon to stop
+     */
+    private static boolean run(String[] args) {
+        if (args.length == 2 && args[0].equals("daemon")) {
+            if (args[1].equals("stop")) {
+                System.out.println("Daemon stopped.");
+                return false;
+            }
+            System.out.println("A daemon is already running.");
+            return true;
+        }
+        try {
+            Main.run(args);
+        } catch (RuntimeException excp) {
+            System.out.println(excp.getMessage());
+            //the command may have stopped after its transaction was made durable: finish it now, as a
+            //new process would before its command, and drop the refs and staging area it only changed
+            //in memory.  If even that fails the daemon stops, so no command runs over the record
+            Transaction.recover();
+            Cache.invalidateMutable();
+        } finally {
+            Index.unload(); //what a file looks like can change before the next command
+        }
+        return true;
+    }
+
+    /**
+     * hands the command ARGS to a running daemon and prints its reply
+     * @return false if there is no daemon to take it, so the command has to be run here
+     */
+    static boolean forward(String[] args) {
+        if (!SOCKET.exists()) {
+            return false;
+        }
+        SocketChannel ch;
+        try {
+            ch = SocketChannel.open(UnixDomainSocketAddress.of(SOCKET.toPath()));
+        } catch (IOException excp) {
+            return false; //the daemon that made the socket is gone
+        }
+        try (SocketChannel daemon = ch) {
+            ByteBuffer request = ByteBuffer.wrap(String.join("\0", args).getBytes(StandardCharsets.UTF_8));
+            while (request.hasRemaining()) {
+                daemon.write(request);
+            }
+            daemon.shutdownOutput();
+            InputStream reply = Channels.newInputStream(daemon);
+            reply.transferTo(System.out);
+            System.out.flush();
+            return true;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
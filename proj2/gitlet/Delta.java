@@ -0,0 +1,201 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.HashMap;
+
+/** Delta compression of successive versions of a file.
+ *  A new version of a file is stored as instructions that rebuild it from
+ *  an older version (its base): COPY a range of the base, or INSERT bytes
+ *  that aren't in it.  A delta's base may itself be a delta; "delta.maxDepth"
+ *  (see Config, at most 255) bounds how long such chains get, so reading a
+ *  version never means replaying more than that many deltas.  Both versions
+ *  are held in memory, so neither may be bigger than "delta.maxSize", and a
+ *  chunked version (see Chunker) is never used as a base.
+ *
+ *  Delta format: target length, then instructions until the end
+ *      COPY   -- 1, base offset, length
+ *      INSERT -- 0, length, the bytes
+ *  with every number written as a varint (7 bits per byte, high bit set
+ *  on all but the last byte).
+ *
+ *  @author Ruth Frausto
+ */
+class Delta {
+
+    private static final int COPY = 1;
+    private static final int INSERT = 0;
+    /** Matches are looked up by the hash of this many bytes. */
+    private static final int WINDOW = 16;
+    private static final int HASH_BASE = 31;
+    private static final int DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+    private static final int DEFAULT_MAX_DEPTH = 10;
+
+    /**
+     * saves FILE as a blob of the object directory DIR and returns its sha1ID;
+     * if the previous version of the file, BASEID, is a good base the blob is stored as a delta
+     * against it, otherwise as a whole
+     * @param baseID blob of the previous version of the file, or null if there is none
+     */
+    static String store(File file, File dir, String baseID) {
+        if (Chunker.chunks(file)) {
+            return Chunker.store(file, dir); //large files share unchanged chunks instead
+        }
+        int maxSize = Config.getInt("delta.maxSize", DEFAULT_MAX_SIZE);
+        //the depth is stored in one byte, so longer chains can't be recorded
+        int maxDepth = Math.min(Config.getInt("delta.maxDepth", DEFAULT_MAX_DEPTH), ObjectStore.MAX_DEPTH);
+        if (baseID == null || file.length() > maxSize
+                || !ObjectStore.contains(dir, baseID)
+                || ObjectStore.encoding(dir, baseID) == ObjectStore.CHUNKED //a large file; never held whole
+                || ObjectStore.depth(dir, baseID) + 1 > maxDepth) {
+            return FileHash.store(file, dir);
+        }
+        byte[] target = Utils.readContents(file); //small enough to hold, and read only this once
+        String sha1ID = Utils.sha1(target);
+        if (ObjectStore.contains(dir, sha1ID)) {
+            return sha1ID;
+        }
+        byte[] base = ObjectStore.readAtMost(dir, baseID, maxSize);
+        if (base == null) {
+            ObjectStore.write(dir, sha1ID, target); //the base is too big to hold
+            return sha1ID;
+        }
+        byte[] delta = create(base, target);
+        if (delta.length < target.length / 2) {
+            ObjectStore.writeDelta(dir, sha1ID, baseID, delta);
+        } else {
+            ObjectStore.write(dir, sha1ID, target); //too different for a delta to pay off
+        }
+        return sha1ID;
+    }
+
+    /** Returns the instructions that turn BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, target.length);
+
+        //key: hash of WINDOW bytes ---> value: an offset of the base where they start
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + WINDOW <= base.length; i += WINDOW) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+
+        int power = 1; //HASH_BASE^(WINDOW - 1), to roll the oldest byte out
+        for (int i = 1; i < WINDOW; i += 1) {
+            power *= HASH_BASE;
+        }
+
+        int pending = 0; //start of the bytes not yet covered by an instruction
+        int i = 0;
+        int h = target.length >= WINDOW ? hash(target, 0) : 0;
+        while (i + WINDOW <= target.length) {
+            Integer at = blocks.get(h);
+            if (at != null && matches(base, at, target, i, WINDOW)) {
+                int start = i;
+                int baseStart = at;
+                while (start > pending && baseStart > 0 && base[baseStart - 1] == target[start - 1]) {
+                    start -= 1; //grow the match backwards into the pending bytes
+                    baseStart -= 1;
+                }
+                int end = i + WINDOW;
+                int baseEnd = at + WINDOW;
+                while (end < target.length && baseEnd < base.length && base[baseEnd] == target[end]) {
+                    end += 1;
+                    baseEnd += 1;
+                }
+                insert(out, target, pending, start);
+                out.write(COPY);
+                writeVarint(out, baseStart);
+                writeVarint(out, end - start);
+                pending = end;
+                i = end;
+                if (i + WINDOW <= target.length) {
+                    h = hash(target, i);
+                }
+                continue;
+            }
+            if (i + WINDOW < target.length) {
+                h = (h - target[i] * power) * HASH_BASE + target[i + WINDOW];
+            }
+            i += 1;
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Rebuilds the target of DELTA from BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        byte[] target = new byte[readVarint(delta, pos)];
+        int t = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]];
+            pos[0] += 1;
+            if (op == COPY) {
+                int offset = readVarint(delta, pos);
+                int length = readVarint(delta, pos);
+                System.arraycopy(base, offset, target, t, length);
+                t += length;
+            } else if (op == INSERT) {
+                int length = readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], target, t, length);
+                pos[0] += length;
+                t += length;
+            } else {
+                throw Utils.error("Corrupt delta.");
+            }
+        }
+        if (t != target.length) {
+            throw Utils.error("Corrupt delta.");
+        }
+        return target;
+    }
+
+    private static void insert(ByteArrayOutputStream out, byte[] target, int from, int to) {
+        if (to > from) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    private static boolean matches(byte[] a, int aFrom, byte[] b, int bFrom, int length) {
+        for (int k = 0; k < length; k += 1) {
+            if (a[aFrom + k] != b[bFrom + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Hash of the WINDOW bytes of DATA starting at FROM, the same one the rolling hash keeps. */
+    private static int hash(byte[] data, int from) {
+        int h = 0;
+        for (int k = 0; k < WINDOW; k += 1) {
+            h = h * HASH_BASE + data[from + k];
+        }
+        return h;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            int b = data[pos[0]] & 0xff;
+            pos[0] += 1;
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** Computes sha1IDs of working files without loading them into memory.
+ *  Files are fed to the digest a fixed-size buffer at a time, or through
+ *  a memory map once they are at least "hash.mmapThreshold" bytes (see
+ *  Config), so hashing a huge file costs the same heap as a small one.
+ *
+ *  @author Ruth Frausto
+ */
+class FileHash {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** Largest piece of a file mapped at once. */
+    private static final long MAP_CHUNK = 1L << 30;
+    private static final int DEFAULT_MMAP_THRESHOLD = 64 * 1024 * 1024;
+
+    /** Returns the sha1ID of the contents of FILE. */
+    static String sha1(File file) {
+        MessageDigest md = newDigest();
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size >= Config.getInt("hash.mmapThreshold", DEFAULT_MMAP_THRESHOLD)) {
+                for (long pos = 0; pos < size; pos += MAP_CHUNK) {
+                    long len = Math.min(MAP_CHUNK, size - pos);
+                    md.update(ch.map(FileChannel.MapMode.READ_ONLY, pos, len));
+                }
+            } else {
+                ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                while (ch.read(buf) >= 0) {
+                    buf.flip();
+                    md.update(buf);
+                    buf.clear();
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return Pack.toHex(md.digest());
+    }
+
+    /**
+     * hashes FILE and saves it as an object of the object directory DIR in the same pass:
+     * every buffer read goes to the digest and to the (compressing) object writer,
+     * so the file is read exactly once
+     * @return the sha1ID of FILE, which is also the name it was saved under
+     */
+    static String store(File file, File dir) {
+        MessageDigest md = newDigest();
+        File tmp = ObjectStore.tempFile(dir);
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+             OutputStream out = ObjectStore.openWrite(tmp)) {
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            int n;
+            while ((n = ch.read(buf)) >= 0) {
+                md.update(buf.array(), 0, n);
+                out.write(buf.array(), 0, n);
+                buf.clear();
+            }
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String id = Pack.toHex(md.digest());
+        ObjectStore.install(tmp, dir, id);
+        return id;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+}
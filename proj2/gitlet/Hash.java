@@ -1,12 +1,23 @@
 package gitlet;
 import java.io.File;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Map;
 
+/** The staging area ("files to stage") and the commit messages ("messages to commits").
+ *  Both are saved in a binary encoding (see encode); files saved by older
+ *  versions are java serialized and still read.
+ */
 public class Hash implements Serializable {
 
+    /** Pinned to the id the class had before the binary encoding, so older files still deserialize. */
+    private static final long serialVersionUID = -3046219952669473170L;
+
     public static final File STAGED_FILES = Utils.join(Repository.GITLET_DIR, "STAGED FILES");
+    private static final int SIGNATURE = 0x47485348; // "GHSH"
+    private static final int VERSION = 1;
     private HashMap<String, String> stagedFiles;
     private LinkedList<String> stagedForRemoval;
     private HashMap<String, LinkedList<String>> msgToCommits;
@@ -25,23 +36,142 @@ public class Hash implements Serializable {
 
 
     public static void saveStagedFiles(Hash hash) {
-        File g = Utils.join(STAGED_FILES, "files to stage");
-        Utils.writeObject(g, hash);
+        save("files to stage", hash);
     }
 
     public static Hash fromFileHash() {
-        File pathToHash = Utils.join(STAGED_FILES, "files to stage"); //path to commit
-        return Utils.readObject(pathToHash, Hash.class);
+        return read("files to stage");
     }
 
     public static Hash fromFileHashMessages() {
-        File pathToMessages = Utils.join(STAGED_FILES, "messages to commits");
-        return Utils.readObject(pathToMessages,Hash.class);
+        return read("messages to commits");
     }
 
     public static void saveHashMessages(Hash hash) {
-        File g = Utils.join(STAGED_FILES, "messages to commits");
-        Utils.writeObject(g, hash);
+        save("messages to commits", hash);
+    }
+
+    /**
+     * reads the Hash saved in STAGED_FILES under NAME
+     * callers get their own copy of the cached one, since they change it before saving it back
+     */
+    private static Hash read(String name) {
+        Hash h = Cache.get(Cache.STAGING, name, Hash.class);
+        if (h == null) {
+            h = decode(Transaction.read(Utils.join(STAGED_FILES, name)));
+            Cache.put(Cache.STAGING, name, h, h.cacheSize());
+        }
+        return h.copy();
+    }
+
+    private static void save(String name, Hash hash) {
+        Transaction.write(Utils.join(STAGED_FILES, name), hash.encode());
+        Hash saved = hash.copy();
+        Cache.put(Cache.STAGING, name, saved, saved.cacheSize());
+    }
+
+    /** Returns a deep copy of this Hash. */
+    private Hash copy() {
+        Hash h = new Hash();
+        h.stagedFiles = this.stagedFiles == null ? null : new HashMap<>(this.stagedFiles);
+        h.stagedForRemoval = this.stagedForRemoval == null ? null : new LinkedList<>(this.stagedForRemoval);
+        if (this.msgToCommits != null) {
+            h.msgToCommits = new HashMap<>();
+            for (Map.Entry<String, LinkedList<String>> e : this.msgToCommits.entrySet()) {
+                h.msgToCommits.put(e.getKey(), new LinkedList<>(e.getValue()));
+            }
+        }
+        return h;
+    }
+
+    /** Rough number of bytes this Hash takes in memory, for the Cache. */
+    private long cacheSize() {
+        long size = 64;
+        if (stagedFiles != null) {
+            size += 200L * stagedFiles.size();
+        }
+        if (stagedForRemoval != null) {
+            size += 100L * stagedForRemoval.size();
+        }
+        if (msgToCommits != null) {
+            for (Map.Entry<String, LinkedList<String>> e : msgToCommits.entrySet()) {
+                size += 100 + 2L * e.getKey().length() + 100L * e.getValue().size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * signature, version, then the staged files (name, blob id), the files staged for removal
+     * and the messages (message, commit ids); a count of -1 stands for a part this Hash doesn't have
+     */
+    byte[] encode() {
+        Codec.Writer out = new Codec.Writer(SIGNATURE, VERSION);
+        if (stagedFiles == null) {
+            out.putInt(-1);
+        } else {
+            out.putInt(stagedFiles.size());
+            for (Map.Entry<String, String> e : stagedFiles.entrySet()) {
+                out.putString(e.getKey()).putId(e.getValue());
+            }
+        }
+        if (stagedForRemoval == null) {
+            out.putInt(-1);
+        } else {
+            out.putInt(stagedForRemoval.size());
+            for (String file : stagedForRemoval) {
+                out.putString(file);
+            }
+        }
+        if (msgToCommits == null) {
+            out.putInt(-1);
+        } else {
+            out.putInt(msgToCommits.size());
+            for (Map.Entry<String, LinkedList<String>> e : msgToCommits.entrySet()) {
+                out.putString(e.getKey()).putInt(e.getValue().size());
+                for (String commitID : e.getValue()) {
+                    out.putId(commitID);
+                }
+            }
+        }
+        return out.toBytes();
+    }
+
+    /** Returns the Hash encoded in CONTENTS, which may also be an older, java serialized one. */
+    static Hash decode(byte[] contents) {
+        ByteBuffer in = Codec.open(contents, SIGNATURE, VERSION);
+        if (in == null) {
+            return Utils.deserialize(contents, Hash.class);
+        }
+        Hash h = new Hash();
+        int n = in.getInt();
+        if (n < 0) {
+            h.stagedFiles = null;
+        }
+        for (int i = 0; i < n; i += 1) {
+            h.stagedFiles.put(Codec.getString(in), Codec.getId(in));
+        }
+        n = in.getInt();
+        if (n < 0) {
+            h.stagedForRemoval = null;
+        }
+        for (int i = 0; i < n; i += 1) {
+            h.stagedForRemoval.add(Codec.getString(in));
+        }
+        n = in.getInt();
+        if (n >= 0) {
+            h.msgToCommits = new HashMap<>();
+        }
+        for (int i = 0; i < n; i += 1) {
+            String message = Codec.getString(in);
+            LinkedList<String> commitIDs = new LinkedList<>();
+            int ids = in.getInt();
+            for (int j = 0; j < ids; j += 1) {
+                commitIDs.add(Codec.getId(in));
+            }
+            h.msgToCommits.put(message, commitIDs);
+        }
+        return h;
     }
 
     public HashMap<String, String> getStagedFiles() {
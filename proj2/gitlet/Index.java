@@ -0,0 +1,228 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/** The stat cache of the working directory, saved in .gitlet/index.
+ *  For each file it remembers the sha1ID of its contents together with the
+ *  size, mtime, ctime and inode the file had when it was hashed.  As long as
+ *  a file still has that same stat data its contents are assumed unchanged,
+ *  so status and add don't have to read it again.
+ *
+ *  Racy files: a file changed right after it was hashed can keep the same
+ *  mtime if the filesystem clock is coarse.  So an entry whose mtime is not
+ *  older than the index file itself is never trusted; the file is hashed
+ *  again and the index rewritten, after which the entry is safe to use.
+ *
+ *  @author Ruth Frausto
+ */
+class Index {
+
+    static final File INDEX = Utils.join(Repository.GITLET_DIR, "index");
+    private static final int SIGNATURE = 0x47494458; // "GIDX"
+    private static final int VERSION = 1;
+
+    /** What a file looked like when it was hashed. */
+    private static class Entry {
+        private final long size;
+        private final long mtime;
+        private final long ctime;
+        private final long inode;
+        private final String sha1ID;
+        /** True if this process hashed (or wrote) the file itself, so it can't be racy. */
+        private final boolean fresh;
+
+        Entry(long size, long mtime, long ctime, long inode, String sha1ID, boolean fresh) {
+            this.size = size;
+            this.mtime = mtime;
+            this.ctime = ctime;
+            this.inode = inode;
+            this.sha1ID = sha1ID;
+            this.fresh = fresh;
+        }
+
+        boolean sameStat(Entry other) {
+            return size == other.size && mtime == other.mtime
+                    && ctime == other.ctime && inode == other.inode;
+        }
+    }
+
+    /** key: file name ---> value: its entry (null until the index is loaded) */
+    private static Map<String, Entry> entries;
+    /** mtime of .gitlet/index when it was loaded, in nanoseconds. */
+    private static long indexTime;
+    private static volatile boolean dirty;
+
+    /**
+     * returns the sha1ID of FILENAME in the CWD, hashing it only if its stat data
+     * changed since the last time (or if its entry is racy)
+     */
+    static String sha1(String fileName) {
+        String cached = lookup(fileName);
+        if (cached != null) {
+            return cached;
+        }
+        return hash(fileName, FileHash::sha1);
+    }
+
+    /**
+     * returns the sha1ID HASHER computes for FILENAME in the CWD (it may save the blob on the way),
+     * and remembers it only if the file had the same stat data before and after being read:
+     * a file changed meanwhile would otherwise get the old sha1ID with its new stat data
+     */
+    static String hash(String fileName, Function<File, String> hasher) {
+        Entry before = stat(fileName, null);
+        String sha1ID = hasher.apply(Staging.getFileFromCWD(fileName));
+        Entry after = stat(fileName, sha1ID);
+        if (after.sameStat(before)) {
+            entries().put(fileName, after);
+        } else {
+            entries().remove(fileName); //hashed again next time
+        }
+        dirty = true;
+        return sha1ID;
+    }
+
+    /** Returns the sha1ID of FILENAME if its entry can be trusted, null if it has to be hashed. */
+    static String lookup(String fileName) {
+        Entry cached = entries().get(fileName);
+        if (cached == null) {
+            return null;
+        }
+        Entry now = stat(fileName, null);
+        if (cached.sameStat(now) && (cached.fresh || cached.mtime < indexTime)) {
+            return cached.sha1ID;
+        }
+        return null;
+    }
+
+    /** Returns true if FILENAME has an entry, trusted or not: it was hashed, added or checked out before. */
+    static boolean knows(String fileName) {
+        return entries().containsKey(fileName);
+    }
+
+    /** Notes that FILENAME in the CWD now holds the blob SHA1ID (it was just added or checked out). */
+    static void record(String fileName, String sha1ID) {
+        entries().put(fileName, stat(fileName, sha1ID));
+        dirty = true;
+    }
+
+    /** Drops FILENAME from the index (it was removed from the CWD). */
+    static void forget(String fileName) {
+        if (entries().remove(fileName) != null) {
+            dirty = true;
+        }
+    }
+
+    /** Writes the index back to .gitlet/index if anything changed. */
+    static void save() {
+        if (!dirty || !Repository.GITLET_DIR.isDirectory()) {
+            return;
+        }
+        try {
+            Path tmp = Files.createTempFile(Repository.GITLET_DIR.toPath(), "index-", "");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(SIGNATURE);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    Entry entry = e.getValue();
+                    out.writeUTF(e.getKey());
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.mtime);
+                    out.writeLong(entry.ctime);
+                    out.writeLong(entry.inode);
+                    out.write(Pack.toBytes(entry.sha1ID));
+                }
+            }
+            Files.move(tmp, INDEX.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        dirty = false;
+    }
+
+    /**
+     * forgets the entries read into memory, so the next command reads .gitlet/index again
+     * and only trusts entries older than it (for the daemon, which runs many commands in one process)
+     */
+    static synchronized void unload() {
+        entries = null;
+        dirty = false;
+    }
+
+    private static synchronized Map<String, Entry> entries() {
+        if (entries == null) {
+            entries = new ConcurrentHashMap<>();
+            if (INDEX.isFile()) {
+                load();
+            }
+        }
+        return entries;
+    }
+
+    private static void load() {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(INDEX.toPath())))) {
+            indexTime = Files.getLastModifiedTime(INDEX.toPath()).to(TimeUnit.NANOSECONDS);
+            if (in.readInt() != SIGNATURE || in.readInt() != VERSION) {
+                return; //unknown index, everything will simply be hashed again
+            }
+            int n = in.readInt();
+            byte[] id = new byte[20];
+            for (int i = 0; i < n; i += 1) {
+                String name = in.readUTF();
+                long size = in.readLong();
+                long mtime = in.readLong();
+                long ctime = in.readLong();
+                long inode = in.readLong();
+                in.readFully(id);
+                entries.put(name, new Entry(size, mtime, ctime, inode, Pack.toHex(id), false));
+            }
+        } catch (IOException excp) {
+            entries.clear(); //a damaged index only costs rehashing
+        }
+    }
+
+    /**
+     * stat data of FILENAME in the CWD, using the unix attributes (ctime, inode)
+     * where the platform has them
+     */
+    private static Entry stat(String fileName, String sha1ID) {
+        Path path = Staging.getFileFromCWD(fileName).toPath();
+        try {
+            Map<String, Object> unix = Files.readAttributes(path, "unix:size,lastModifiedTime,ctime,ino");
+            return new Entry((Long) unix.get("size"), nanos(unix.get("lastModifiedTime")),
+                    nanos(unix.get("ctime")), (Long) unix.get("ino"), sha1ID, true);
+        } catch (UnsupportedOperationException | IllegalArgumentException excp) {
+            try {
+                BasicFileAttributes basic = Files.readAttributes(path, BasicFileAttributes.class);
+                return new Entry(basic.size(), nanos(basic.lastModifiedTime()),
+                        nanos(basic.creationTime()), Objects.hashCode(basic.fileKey()), sha1ID, true);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private static long nanos(Object time) {
+        return ((FileTime) time).to(TimeUnit.NANOSECONDS);
+    }
+}
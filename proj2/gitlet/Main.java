@@ -1,5 +1,10 @@
 package gitlet;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 /** Driver class for Gitlet, a subset of the Git version-control system.
  *  @author TODO
  */
@@ -10,13 +15,33 @@ public class Main {
      */
     public static void main(String[] args) {
         // TODO: what if args is empty?
+        boolean startingDaemon = args[0].equals("daemon") && args.length == 1;
+        if (args[0].equals("batch") && args.length <= 2) {
+            //read here, so a daemon gets the script itself, not this process's stdin or a path
+            args = new String[] {"batch", "--script", readScript(args.length == 2 ? args[1] : null)};
+        }
+        if (!startingDaemon && Daemon.forward(args)) {
+            return; //a daemon is running and did it (or, for "daemon stop", stopped)
+        }
+        if (Repository.GITLET_DIR.isDirectory()) {
+            Transaction.recover(); //a commit interrupted after it was made durable
+        }
+        run(args);
+    }
+
+    /** Runs the command ARGS in this process (called by main, or by the daemon for a client). */
+    static void run(String[] args) {
         String firstArg = args[0];
         switch(firstArg) {
             case "init":
                 Repository.initCommand();
                 break;
             case "add":
-                Repository.add(args[1]);
+                if (args.length < 2) {
+                    System.out.println("Incorrect operands.");
+                    return;
+                }
+                Repository.add(Arrays.asList(args).subList(1, args.length));
                 break;
             case "commit":
                 //validateNumArgs("commit", args, 2);
@@ -38,15 +63,20 @@ public class Main {
             }
 
             case "log":
-                Repository.log();
+                if (args.length == 2 && args[1].equals("--abbrev")) {
+                    Repository.log(true);
+                } else if (args.length == 1) {
+                    Repository.log(false);
+                } else {
+                    System.out.println("Incorrect operands.");
+                }
                 break;
             case "checkout":
                 if(args[1].equals("--")) {
                     validateNumArgs("checkout", args, 3);
                     Repository.checkoutFile(args[2]);
                     break;
-                } else if (args[1].matches("[a-z0-9]*") && args[1].length() == 40) {
-                    validateNumArgs("checkout", args, 4);
+                } else if (args.length == 4) { //the commit id may be abbreviated
                     if (args[2].equals("--")) {
                         Repository.checkoutCommitAndFile(args[1], args[3]);
                         break;
@@ -60,10 +90,31 @@ public class Main {
                 }
                 break;
             case "find":
-                Repository.find(args[1]);
+                if (args[1].equals("--contains")) {
+                    validateNumArgs("find", args, 3);
+                    Repository.findContaining(args[2]);
+                } else if (args[1].equals("--regex")) {
+                    validateNumArgs("find", args, 3);
+                    Repository.findMatching(args[2]);
+                } else {
+                    Repository.find(args[1]);
+                }
                 break;
             case "global-log":
-                Repository.globalLog();
+                boolean newestFirst = false;
+                int limit = -1;
+                for (int i = 1; i < args.length; i += 1) {
+                    if (args[i].equals("--reverse")) {
+                        newestFirst = true;
+                    } else if (args[i].equals("--limit") && i + 1 < args.length && args[i + 1].matches("[0-9]+")) {
+                        limit = Integer.parseInt(args[i + 1]);
+                        i += 1;
+                    } else {
+                        System.out.println("Incorrect operands.");
+                        return;
+                    }
+                }
+                Repository.globalLog(newestFirst, limit);
                 break;
             case "status":
                 Repository.status();
@@ -74,11 +125,56 @@ public class Main {
             case "merge":
                 Repository.merge(args[1]);
                 break;
+            case "repack":
+                Repository.repack();
+                break;
+            case "migrate":
+                Repository.migrate();
+                break;
+            case "batch":
+                if (args.length == 3 && args[1].equals("--script")) {
+                    Batch.run(args[2]);
+                } else if (args.length <= 2) {
+                    Batch.run(readScript(args.length == 2 ? args[1] : null));
+                } else {
+                    System.out.println("Incorrect operands.");
+                }
+                break;
+            case "daemon":
+                if (args.length == 2 && args[1].equals("stop")) {
+                    System.out.println("No daemon is running.");
+                } else if (!Repository.GITLET_DIR.isDirectory()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
+                } else {
+                    Daemon.serve();
+                }
+                break;
             default:
                 System.out.println("No command with that name exists.");
 
         }
+        Index.save(); //stat data of the files hashed or written by this command
+        if (Boolean.parseBoolean(Config.get("cache.stats", "false"))) {
+            System.err.println(Cache.stats());
+        }
     }
+
+    /** The contents of the file FILENAME, or of stdin if it is null. */
+    private static String readScript(String filename) {
+        if (filename != null) {
+            File f = new File(filename);
+            if (!f.isFile()) {
+                throw Utils.error("No such script: %s.", filename);
+            }
+            return Utils.readContentsAsString(f);
+        }
+        try {
+            return new String(System.in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     public static void validateNumArgs(String cmd, String[] args, int n) {
         if (args.length != n) {
             throw new RuntimeException(
@@ -0,0 +1,141 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** Finds merge bases (split points) on the commit graph.
+ *  Commits are taken off a priority queue newest first -- highest
+ *  generation, then latest timestamp -- and painted with the side(s) they
+ *  are reachable from.  A commit painted from both sides is a common
+ *  ancestor; its own ancestors are painted STALE, since they can only be
+ *  worse bases.  The walk ends as soon as everything left in the queue is
+ *  stale, so its cost depends on the commits between the tips and their
+ *  bases, not on the length of the whole history.
+ *
+ *  With criss-cross histories there can be several bases that are not
+ *  ancestors of one another; the best one is the newest of them.
+ *
+ *  @author Ruth Frausto
+ */
+class MergeBase {
+
+    private static final int PARENT1 = 1;
+    private static final int PARENT2 = 2;
+    private static final int STALE = 4;
+    private static final int RESULT = 8;
+
+    /** Orders graph nodes newest first. */
+    private static final Comparator<CommitGraph.Node> NEWEST_FIRST = (x, y) -> {
+        if (x.generation != y.generation) {
+            return Integer.compare(y.generation, x.generation);
+        }
+        return Long.compare(y.time, x.time);
+    };
+
+    /** Returns the best common ancestor of commits ONE and TWO, or null if they have none. */
+    static String find(String one, String two) {
+        List<String> bases = all(one, two);
+        if (bases.isEmpty()) {
+            return null;
+        }
+        CommitGraph.Node best = CommitGraph.node(bases.get(0));
+        for (String base : bases) {
+            CommitGraph.Node n = CommitGraph.node(base);
+            if (NEWEST_FIRST.compare(n, best) < 0) {
+                best = n;
+            }
+        }
+        return best.id;
+    }
+
+    /** Returns every merge base of ONE and TWO: common ancestors that aren't ancestors of another one. */
+    static List<String> all(String one, String two) {
+        List<String> candidates = paintDownToCommon(one, two);
+        List<String> bases = new ArrayList<>();
+        for (String c : candidates) {
+            boolean redundant = false;
+            for (String other : candidates) {
+                if (!other.equals(c) && isAncestor(c, other)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                bases.add(c);
+            }
+        }
+        return bases;
+    }
+
+    /**
+     * returns true if ANCESTOR can be reached from DESCENDANT by following parents
+     * commits with a generation below ANCESTOR's are never expanded
+     */
+    static boolean isAncestor(String ancestor, String descendant) {
+        int cutoff = CommitGraph.node(ancestor).generation;
+        HashMap<String, Boolean> seen = new HashMap<>();
+        PriorityQueue<CommitGraph.Node> queue = new PriorityQueue<>(NEWEST_FIRST);
+        queue.add(CommitGraph.node(descendant));
+        while (!queue.isEmpty()) {
+            CommitGraph.Node n = queue.poll();
+            if (n.id.equals(ancestor)) {
+                return true;
+            }
+            for (String p : n.parents()) {
+                CommitGraph.Node pn = CommitGraph.node(p);
+                if (pn.generation >= cutoff && seen.put(p, true) == null) {
+                    queue.add(pn);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** The common ancestors of ONE and TWO reached first by the painting walk. */
+    private static List<String> paintDownToCommon(String one, String two) {
+        List<String> result = new ArrayList<>();
+        if (one.equals(two)) {
+            result.add(one);
+            return result;
+        }
+        HashMap<String, Integer> flags = new HashMap<>();
+        PriorityQueue<CommitGraph.Node> queue = new PriorityQueue<>(NEWEST_FIRST);
+        flags.put(one, PARENT1);
+        flags.put(two, PARENT2);
+        queue.add(CommitGraph.node(one));
+        queue.add(CommitGraph.node(two));
+
+        while (hasNonStale(queue, flags)) {
+            CommitGraph.Node n = queue.poll();
+            int f = flags.get(n.id) & (PARENT1 | PARENT2 | STALE);
+            if ((f & (PARENT1 | PARENT2)) == (PARENT1 | PARENT2)) {
+                if ((flags.get(n.id) & RESULT) == 0) {
+                    flags.put(n.id, flags.get(n.id) | RESULT);
+                    result.add(n.id);
+                }
+                f |= STALE; //everything below a common ancestor is a worse one
+            }
+            for (String p : n.parents()) {
+                int pf = flags.getOrDefault(p, 0);
+                if ((pf & f) == f) {
+                    continue; //already painted with all of these
+                }
+                flags.put(p, pf | f);
+                queue.add(CommitGraph.node(p));
+            }
+        }
+        return result;
+    }
+
+    private static boolean hasNonStale(PriorityQueue<CommitGraph.Node> queue, HashMap<String, Integer> flags) {
+        for (CommitGraph.Node n : queue) {
+            if ((flags.get(n.id) & STALE) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
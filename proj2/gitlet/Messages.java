@@ -0,0 +1,554 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/** The commit messages, for find.
+ *
+ *  .gitlet/messages is a journal: one record -- message, commit id -- is
+ *  appended per commit, so committing never rewrites it.
+ *      header  -- "GMSG", version
+ *      record  -- message length, message (UTF-8), 20-byte commit id
+ *
+ *  .gitlet/messages-index is an on-disk hash table from a message to the
+ *  journal offsets of its records (open addressing, linear probing), so an
+ *  exact find reads a few slots and records instead of every message.
+ *      header  -- "GMSX", version, slot count, entry count, journal bytes covered
+ *      slots   -- per slot: message hash, record offset (0 for an empty slot)
+ *  It is rebuilt with twice the slots once it is half full.  Records past
+ *  the bytes it covers (left by a command that stopped between the two
+ *  writes) are indexed the next time it's opened.
+ *
+ *  .gitlet/messages-ngrams is an inverted index from every trigram (three
+ *  consecutive UTF-8 bytes) to the records whose message holds it, for
+ *  find --contains and find --regex.  It's only built the first time one of
+ *  those is asked; records appended after it was built are scanned directly
+ *  until they pass "find.ngramTail" bytes, and then it is rebuilt.
+ *      header   -- "GMNG", version, journal bytes covered, trigram count
+ *      trigrams -- sorted; per trigram: trigram, first posting, posting count
+ *      postings -- record offsets, ascending within a trigram
+ *
+ *  Repositories made before the journal get it built from their
+ *  "messages to commits" file the first time it's needed.
+ *
+ *  @author Ruth Frausto
+ */
+class Messages {
+
+    static final File JOURNAL = Utils.join(Repository.GITLET_DIR, "messages");
+    static final File INDEX = Utils.join(Repository.GITLET_DIR, "messages-index");
+    static final File NGRAMS = Utils.join(Repository.GITLET_DIR, "messages-ngrams");
+    /** where the messages were kept before the journal */
+    private static final File LEGACY = Utils.join(Hash.STAGED_FILES, "messages to commits");
+
+    private static final int JOURNAL_SIGNATURE = 0x474d5347; // "GMSG"
+    private static final int INDEX_SIGNATURE = 0x474d5358; // "GMSX"
+    private static final int NGRAM_SIGNATURE = 0x474d4e47; // "GMNG"
+    private static final int VERSION = 1;
+    private static final int JOURNAL_HEADER = 8;
+    private static final int INDEX_HEADER = 4 + 4 + 4 + 4 + 8;
+    private static final int SLOT_BYTES = 4 + 8;
+    private static final int NGRAM_HEADER = 4 + 4 + 8 + 4;
+    private static final int NGRAM_ENTRY = 4 + 4 + 4;
+    private static final int MIN_SLOTS = 1024;
+    private static final int DEFAULT_NGRAM_TAIL = 64 * 1024;
+    private static final int ID_BYTES = 20;
+
+    /** A record of the journal. */
+    private static class Record {
+        final long offset;
+        final String message;
+        final String commitID;
+
+        Record(long offset, String message, String commitID) {
+            this.offset = offset;
+            this.message = message;
+            this.commitID = commitID;
+        }
+    }
+
+    /** Appends the message of the new commit COMMITID to the journal and indexes it. */
+    static void add(String message, String commitID) {
+        create();
+        catchUp(); //cuts off a torn last record, so this one doesn't land after it
+        byte[] utf8 = message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(4 + utf8.length + ID_BYTES);
+        record.putInt(utf8.length).put(utf8).put(Pack.toBytes(commitID));
+        Transaction.append(JOURNAL, record.array());
+        catchUp(); //indexes the record just appended (once the transaction it's part of is committed, next time)
+    }
+
+    /** Returns the ids of the commits whose message is exactly MESSAGE, oldest first. */
+    static List<String> find(String message) {
+        create();
+        catchUp();
+        byte[] utf8 = message.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(utf8);
+        List<String> commitIDs = new ArrayList<>();
+        try (FileChannel index = FileChannel.open(INDEX.toPath(), StandardOpenOption.READ);
+             FileChannel journal = FileChannel.open(JOURNAL.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = readAt(index, 0, INDEX_HEADER);
+            header.position(8);
+            int slots = header.getInt();
+            TreeSet<Long> offsets = new TreeSet<>();
+            for (int i = hash & (slots - 1); ; i = (i + 1) & (slots - 1)) {
+                ByteBuffer slot = readAt(index, INDEX_HEADER + (long) i * SLOT_BYTES, SLOT_BYTES);
+                int slotHash = slot.getInt();
+                long offset = slot.getLong();
+                if (offset == 0) {
+                    break;
+                }
+                if (slotHash == hash) {
+                    offsets.add(offset);
+                }
+            }
+            for (long offset : offsets) {
+                Record r = recordAt(journal, offset);
+                if (r.message.equals(message)) {
+                    commitIDs.add(r.commitID);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return commitIDs;
+    }
+
+    /** Returns the ids of the commits whose message contains TEXT, oldest first. */
+    static List<String> containing(String text) {
+        List<String> commitIDs = new ArrayList<>();
+        for (Record r : candidates(text)) {
+            if (r.message.contains(text)) {
+                commitIDs.add(r.commitID);
+            }
+        }
+        return commitIDs;
+    }
+
+    /**
+     * returns the ids of the commits with a message PATTERN finds a match in, oldest first;
+     * the n-gram index narrows the messages tried down to those holding the longest literal
+     * every match of PATTERN has to contain, when there is one
+     */
+    static List<String> matching(Pattern pattern) {
+        String literal = requiredLiteral(pattern.pattern());
+        List<String> commitIDs = new ArrayList<>();
+        for (Record r : candidates(literal == null ? "" : literal)) {
+            if (pattern.matcher(r.message).find()) {
+                commitIDs.add(r.commitID);
+            }
+        }
+        return commitIDs;
+    }
+
+    /**
+     * creates the journal if the repository doesn't have one yet, importing the messages
+     * of an older repository (ordered by commit time, the order the journal would have had)
+     */
+    static void create() {
+        if (JOURNAL.isFile()) {
+            return;
+        }
+        List<Record> records = new ArrayList<>();
+        if (LEGACY.isFile()) {
+            for (Map.Entry<String, LinkedList<String>> e : Hash.fromFileHashMessages().getMsgToCommits().entrySet()) {
+                for (String commitID : e.getValue()) {
+                    records.add(new Record(0, e.getKey(), commitID));
+                }
+            }
+            records.sort(Comparator.comparingLong((Record r) -> Commit.header(r.commitID).getTimeStamp().getTime()));
+        }
+        try {
+            Path tmp = Files.createTempFile(Repository.GITLET_DIR.toPath(), "messages-", "");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(JOURNAL_SIGNATURE);
+                out.writeInt(VERSION);
+                for (Record r : records) {
+                    byte[] utf8 = r.message.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(utf8.length);
+                    out.write(utf8);
+                    out.write(Pack.toBytes(r.commitID));
+                }
+            }
+            Files.move(tmp, JOURNAL.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(INDEX.toPath());
+            Files.deleteIfExists(NGRAMS.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * indexes the records past the bytes the hash index covers, building the index if there is none
+     * or it got too full; a torn last record (a command that stopped while appending) is cut off
+     */
+    private static void catchUp() {
+        if (!INDEX.isFile()) {
+            rebuildIndex();
+            return;
+        }
+        try (FileChannel index = FileChannel.open(INDEX.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileChannel journal = FileChannel.open(JOURNAL.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = readAt(index, 0, INDEX_HEADER);
+            if (header.getInt() != INDEX_SIGNATURE || header.getInt() != VERSION) {
+                throw Utils.error("Corrupt message index.");
+            }
+            int slots = header.getInt();
+            int entries = header.getInt();
+            long covered = header.getLong();
+            if (covered == journal.size()) {
+                return;
+            }
+            List<Record> added = new ArrayList<>();
+            long end = scan(covered, added);
+            if (end < journal.size()) {
+                journal.truncate(end);
+            }
+            if ((long) (entries + added.size()) * 2 > slots) {
+                rebuildIndex();
+                return;
+            }
+            for (Record r : added) {
+                int hash = hash(r.message.getBytes(StandardCharsets.UTF_8));
+                int i = hash & (slots - 1);
+                while (readAt(index, INDEX_HEADER + (long) i * SLOT_BYTES + 4, 8).getLong() != 0) {
+                    i = (i + 1) & (slots - 1);
+                }
+                ByteBuffer slot = ByteBuffer.allocate(SLOT_BYTES);
+                slot.putInt(hash).putLong(r.offset).flip();
+                writeAt(index, INDEX_HEADER + (long) i * SLOT_BYTES, slot);
+            }
+            ByteBuffer counts = ByteBuffer.allocate(4 + 8);
+            counts.putInt(entries + added.size()).putLong(end).flip();
+            writeAt(index, 12, counts);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the hash index of the whole journal, with at most half its slots full. */
+    private static void rebuildIndex() {
+        List<Record> records = new ArrayList<>();
+        long end = scan(JOURNAL_HEADER, records);
+        if (end < JOURNAL.length()) {
+            try (FileChannel journal = FileChannel.open(JOURNAL.toPath(), StandardOpenOption.WRITE)) {
+                journal.truncate(end); //a torn last record
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        int slots = MIN_SLOTS;
+        while ((long) records.size() * 2 > slots) {
+            slots *= 2;
+        }
+        int[] hashes = new int[slots];
+        long[] offsets = new long[slots];
+        for (Record r : records) {
+            int hash = hash(r.message.getBytes(StandardCharsets.UTF_8));
+            int i = hash & (slots - 1);
+            while (offsets[i] != 0) {
+                i = (i + 1) & (slots - 1);
+            }
+            hashes[i] = hash;
+            offsets[i] = r.offset;
+        }
+        try {
+            Path tmp = Files.createTempFile(Repository.GITLET_DIR.toPath(), "messages-index-", "");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(INDEX_SIGNATURE);
+                out.writeInt(VERSION);
+                out.writeInt(slots);
+                out.writeInt(records.size());
+                out.writeLong(end);
+                for (int i = 0; i < slots; i += 1) {
+                    out.writeInt(hashes[i]);
+                    out.writeLong(offsets[i]);
+                }
+            }
+            Files.move(tmp, INDEX.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * returns the records whose message may contain TEXT, oldest first: the ones the n-gram index
+     * lists under every trigram of TEXT, plus the records it doesn't cover yet
+     * (every record, if TEXT is shorter than a trigram)
+     */
+    private static List<Record> candidates(String text) {
+        create();
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        List<Record> records = new ArrayList<>();
+        if (utf8.length < 3) {
+            scan(JOURNAL_HEADER, records);
+            return records;
+        }
+        MappedByteBuffer ngrams = ngrams();
+        long covered = ngrams.getLong(8);
+        long[] offsets = null;
+        for (int t : trigrams(utf8)) {
+            long[] postings = postings(ngrams, t);
+            offsets = offsets == null ? postings : intersect(offsets, postings);
+            if (offsets.length == 0) {
+                break;
+            }
+        }
+        try (FileChannel journal = FileChannel.open(JOURNAL.toPath(), StandardOpenOption.READ)) {
+            for (long offset : offsets) {
+                records.add(recordAt(journal, offset));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        scan(covered, records);
+        return records;
+    }
+
+    /** Maps the n-gram index, (re)building it if it's missing or too far behind the journal. */
+    private static MappedByteBuffer ngrams() {
+        long tailLimit = Config.getInt("find.ngramTail", DEFAULT_NGRAM_TAIL);
+        if (NGRAMS.isFile()) {
+            MappedByteBuffer ngrams = map(NGRAMS);
+            if (ngrams.getInt(0) != NGRAM_SIGNATURE || ngrams.getInt(4) != VERSION) {
+                throw Utils.error("Corrupt message n-gram index.");
+            }
+            if (JOURNAL.length() - ngrams.getLong(8) <= tailLimit) {
+                return ngrams;
+            }
+        }
+        rebuildNgrams();
+        return map(NGRAMS);
+    }
+
+    private static void rebuildNgrams() {
+        List<Record> records = new ArrayList<>();
+        long end = scan(JOURNAL_HEADER, records);
+        TreeMap<Integer, List<Long>> index = new TreeMap<>();
+        for (Record r : records) {
+            for (int t : trigrams(r.message.getBytes(StandardCharsets.UTF_8))) {
+                index.computeIfAbsent(t, k -> new ArrayList<>()).add(r.offset);
+            }
+        }
+        try {
+            Path tmp = Files.createTempFile(Repository.GITLET_DIR.toPath(), "messages-ngrams-", "");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(NGRAM_SIGNATURE);
+                out.writeInt(VERSION);
+                out.writeLong(end);
+                out.writeInt(index.size());
+                int first = 0;
+                for (Map.Entry<Integer, List<Long>> e : index.entrySet()) {
+                    out.writeInt(e.getKey());
+                    out.writeInt(first);
+                    out.writeInt(e.getValue().size());
+                    first += e.getValue().size();
+                }
+                for (List<Long> postings : index.values()) {
+                    for (long offset : postings) {
+                        out.writeLong(offset);
+                    }
+                }
+            }
+            Files.move(tmp, NGRAMS.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The record offsets NGRAMS lists under trigram T, by binary search of its trigram table. */
+    private static long[] postings(MappedByteBuffer ngrams, int t) {
+        int count = ngrams.getInt(16);
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int entry = NGRAM_HEADER + mid * NGRAM_ENTRY;
+            int cmp = Integer.compare(ngrams.getInt(entry), t);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                int first = ngrams.getInt(entry + 4);
+                long[] offsets = new long[ngrams.getInt(entry + 8)];
+                int start = NGRAM_HEADER + count * NGRAM_ENTRY + first * 8;
+                for (int i = 0; i < offsets.length; i += 1) {
+                    offsets[i] = ngrams.getLong(start + i * 8);
+                }
+                return offsets;
+            }
+        }
+        return new long[0];
+    }
+
+    /** The offsets in both A and B, which are both ascending. */
+    private static long[] intersect(long[] a, long[] b) {
+        long[] both = new long[Math.min(a.length, b.length)];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i += 1;
+            } else if (a[i] > b[j]) {
+                j += 1;
+            } else {
+                both[n] = a[i];
+                n += 1;
+                i += 1;
+                j += 1;
+            }
+        }
+        return Arrays.copyOf(both, n);
+    }
+
+    /** The distinct trigrams of UTF8, each packed in an int. */
+    private static TreeSet<Integer> trigrams(byte[] utf8) {
+        TreeSet<Integer> trigrams = new TreeSet<>();
+        for (int i = 0; i + 3 <= utf8.length; i += 1) {
+            trigrams.add((utf8[i] & 0xff) << 16 | (utf8[i + 1] & 0xff) << 8 | (utf8[i + 2] & 0xff));
+        }
+        return trigrams;
+    }
+
+    /**
+     * returns the longest run of plain characters every match of REGEX must contain, or null
+     * if there's none worth looking up; patterns with groups or alternatives aren't taken apart
+     */
+    static String requiredLiteral(String regex) {
+        if (regex.contains("|") || regex.contains("(")) {
+            return null;
+        }
+        String best = "";
+        StringBuilder run = new StringBuilder();
+        for (int i = 0; i < regex.length(); i += 1) {
+            char c = regex.charAt(i);
+            if (c == '?' || c == '*' || c == '{') {
+                if (run.length() > 0) {
+                    run.setLength(run.length() - 1); //the char before was optional
+                }
+            } else if (c != '\\' && c != '[' && ".^$+)]}".indexOf(c) < 0) {
+                run.append(c);
+                continue;
+            }
+            if (run.length() > best.length()) {
+                best = run.toString();
+            }
+            run.setLength(0);
+            if (c == '\\') {
+                i += 1; //an escape, or a class like \d
+            } else if (c == '[') {
+                int close = regex.indexOf(']', i + 2);
+                i = close < 0 ? regex.length() : close;
+            } else if (c == '{') {
+                int close = regex.indexOf('}', i + 1); //the bounds of a quantifier, not text
+                i = close < 0 ? regex.length() : close;
+            }
+        }
+        if (run.length() > best.length()) {
+            best = run.toString();
+        }
+        return best.getBytes(StandardCharsets.UTF_8).length >= 3 ? best : null;
+    }
+
+    /**
+     * reads the journal records from offset FROM to the end into RECORDS in one buffered pass
+     * @return the offset just past the last whole record
+     */
+    private static long scan(long from, List<Record> records) {
+        long offset = from;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(JOURNAL.toPath()), 64 * 1024))) {
+            in.skipNBytes(from);
+            while (true) {
+                Record r = readRecord(in, offset);
+                if (r == null) {
+                    return offset;
+                }
+                records.add(r);
+                offset += 4 + r.message.getBytes(StandardCharsets.UTF_8).length + ID_BYTES;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Reads the record at OFFSET from IN; null at the end of the journal or for a torn record. */
+    private static Record readRecord(DataInputStream in, long offset) throws IOException {
+        try {
+            byte[] utf8 = new byte[in.readInt()];
+            in.readFully(utf8);
+            byte[] id = new byte[ID_BYTES];
+            in.readFully(id);
+            return new Record(offset, new String(utf8, StandardCharsets.UTF_8), Pack.toHex(id));
+        } catch (EOFException excp) {
+            return null;
+        }
+    }
+
+    private static Record recordAt(FileChannel journal, long offset) throws IOException {
+        int length = readAt(journal, offset, 4).getInt();
+        ByteBuffer rest = readAt(journal, offset + 4, length + ID_BYTES);
+        byte[] utf8 = new byte[length];
+        rest.get(utf8);
+        byte[] id = new byte[ID_BYTES];
+        rest.get(id);
+        return new Record(offset, new String(utf8, StandardCharsets.UTF_8), Pack.toHex(id));
+    }
+
+    private static ByteBuffer readAt(FileChannel ch, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, position + buf.position()) < 0) {
+                throw Utils.error("Corrupt message journal.");
+            }
+        }
+        return buf.flip();
+    }
+
+    private static void writeAt(FileChannel ch, long position, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            ch.write(buf, position + buf.position());
+        }
+    }
+
+    private static MappedByteBuffer map(File f) {
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Hash of a message's UTF8 bytes, spread so the low bits pick good slots. */
+    private static int hash(byte[] utf8) {
+        int h = Arrays.hashCode(utf8);
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,653 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** Reads and writes gitlet objects (blobs and commits) by their sha1ID.
+ *  An object is either a loose file named by its sha1ID inside its object
+ *  directory (Commit.COMMITS or Staging.BLOBS), or an entry of one of the
+ *  packs in that directory's pack folder.  Callers don't need to know which.
+ *
+ *  Loose objects are fanned out into folders named by the first two hex
+ *  digits of their sha1ID (blobs/ab/cdef...), so no folder grows past a
+ *  few thousand entries and finding an object is a single path probe.
+ *  Repositories made before that have their loose objects directly in the
+ *  object directory; those are still found, and migrate moves them.
+ *
+ *  Stored objects start with MAGIC and an encoding byte (STORED, DEFLATED or
+ *  DELTA) followed by the contents.  Objects written before compression
+ *  existed have no header and are read back as they are.  The "compression"
+ *  setting (see Config) picks the zlib level, 0 meaning store uncompressed.
+ *  copy() writes an object into a file of the working directory: stored
+ *  ones go channel to channel with transferTo, without passing through
+ *  the heap, and the others are inflated as they stream through.
+ *
+ *  A DELTA object holds the 20-byte id of its base object, its depth (how
+ *  many deltas have to be applied to rebuild it) and its deflated Delta.
+ *  Rebuilt bases are kept in a cache of at most "delta.cacheSize" bytes, so
+ *  versions sharing a chain don't each replay it from the start.
+ *
+ *  A CHUNKED object (a large file, see Chunker) holds the number of its
+ *  chunks and, for each, its 20-byte id in Chunker.CHUNKS and its length.
+ *  Its contents are the chunks one after the other, opened as they are
+ *  reached; copy() streams them into the file one at a time, in order.
+ *
+ *  @author Ruth Frausto
+ */
+class ObjectStore {
+
+    /** First bytes of every object written with an encoding header. */
+    private static final byte[] MAGIC = {0, 'g', 'l', 't'};
+    static final int STORED = 0;
+    static final int DEFLATED = 1;
+    static final int DELTA = 2;
+    static final int CHUNKED = 3;
+    /** longest delta chain an object can record: its depth is written in one byte */
+    static final int MAX_DEPTH = 255;
+    private static final int HEADER_LENGTH = MAGIC.length + 1;
+    /** hex digits of a sha1ID naming its fan-out folder */
+    private static final int FANOUT = 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int DEFAULT_DELTA_CACHE = 64 * 1024 * 1024;
+
+    /** Rebuilt delta bases, key: object directory/sha1ID ---> value: contents, least recently used first. */
+    private static final LinkedHashMap<String, byte[]> DELTA_BASES = new LinkedHashMap<>(16, 0.75f, true);
+    private static long deltaBasesSize;
+
+    /** Loose objects installed by this process whose bytes may not have reached the disk yet. */
+    private static final LinkedHashSet<File> UNSYNCED = new LinkedHashSet<>();
+
+    /** Returns true if NAME looks like a full sha1ID. */
+    static boolean isId(String name) {
+        return name.length() == Utils.UID_LENGTH && name.matches("[0-9a-f]*");
+    }
+
+    /** Path of the loose copy of object ID in the object directory DIR, inside its fan-out folder. */
+    static File looseFile(File dir, String id) {
+        return Utils.join(dir, id.substring(0, FANOUT), id.substring(FANOUT));
+    }
+
+    /** The loose file of object ID of DIR, where this gitlet or one from before fan-out put it, or null. */
+    static File findLoose(File dir, String id) {
+        File loose = looseFile(dir, id);
+        if (loose.isFile()) {
+            return loose;
+        }
+        File flat = Utils.join(dir, id);
+        return flat.isFile() ? flat : null;
+    }
+
+    /** Returns true if the object directory DIR holds ID, loose or packed. */
+    static boolean contains(File dir, String id) {
+        if (!isId(id)) {
+            return false;
+        }
+        if (findLoose(dir, id) != null) {
+            return true;
+        }
+        for (Pack p : Pack.packsIn(dir)) {
+            if (p.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * reads the whole contents of object ID of the object directory DIR if it is at most LIMIT bytes long
+     * @return the contents, or null (having read no more than LIMIT + 1 bytes) if it is longer
+     */
+    static byte[] readAtMost(File dir, String id, int limit) {
+        try (InputStream in = open(dir, id)) {
+            byte[] contents = in.readNBytes(limit == Integer.MAX_VALUE ? limit : limit + 1);
+            return contents.length > limit ? null : contents;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Reads the whole contents of object ID from the object directory DIR. */
+    static byte[] read(File dir, String id) {
+        try (InputStream in = open(dir, id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * opens object ID of the object directory DIR, looking at the loose file first
+     * (recent objects) and then at the packs
+     * compressed objects are inflated as the stream is read, never all at once
+     */
+    static InputStream open(File dir, String id) {
+        try {
+            return decode(dir, openStored(dir, id));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Opens the stored (still encoded) bytes of object ID of DIR. */
+    private static InputStream openStored(File dir, String id) {
+        InputStream stored = null;
+        try {
+            File loose = findLoose(dir, id);
+            if (loose != null) {
+                stored = Files.newInputStream(loose.toPath());
+            } else {
+                for (Pack p : Pack.packsIn(dir)) {
+                    stored = p.open(id);
+                    if (stored != null) {
+                        break;
+                    }
+                }
+            }
+            if (stored == null) {
+                throw Utils.error("No object %s in %s.", id, dir.getName());
+            }
+            return stored;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * writes the contents of object ID of DIR into the file TARGET, byte for byte
+     * @return the number of bytes written
+     */
+    static long copy(File dir, String id, File target) {
+        try (FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            return copy(dir, id, out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private static long copy(File dir, String id, FileChannel out) throws IOException {
+        long copied = copyStored(dir, id, out);
+        if (copied >= 0) {
+            return copied;
+        }
+        List<String> chunks = chunks(dir, id);
+        if (chunks != null) {
+            copied = 0;
+            for (String chunk : chunks) {
+                copied += copy(Chunker.CHUNKS, chunk, out); //sequential writes, one chunk at a time
+            }
+            return copied;
+        }
+        copied = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = open(dir, id)) {
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, n);
+                while (chunk.hasRemaining()) {
+                    out.write(chunk);
+                }
+                copied += n;
+            }
+        }
+        return copied;
+    }
+
+    /** The ids of the chunks of object ID of DIR, or null if it isn't CHUNKED. */
+    private static List<String> chunks(File dir, String id) throws IOException {
+        try (InputStream in = openStored(dir, id)) {
+            byte[] header = in.readNBytes(HEADER_LENGTH);
+            if (header.length == HEADER_LENGTH && Arrays.equals(header, 0, MAGIC.length, MAGIC, 0, MAGIC.length)
+                    && header[MAGIC.length] == CHUNKED) {
+                return readChunks(in);
+            }
+            return null;
+        }
+    }
+
+    /** Reads the chunk list of a CHUNKED object from IN, positioned just after its header. */
+    private static List<String> readChunks(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int n = data.readInt();
+        List<String> chunks = new ArrayList<>(n);
+        byte[] id = new byte[20];
+        for (int i = 0; i < n; i += 1) {
+            data.readFully(id);
+            data.readInt(); //length
+            chunks.add(Pack.toHex(id));
+        }
+        return chunks;
+    }
+
+    /**
+     * saves object ID of DIR as the chunks IDS of Chunker.CHUNKS, of LENGTHS bytes each
+     * (the chunks must already be saved)
+     */
+    static void writeChunked(File dir, String id, List<String> ids, List<Integer> lengths) {
+        if (contains(dir, id)) {
+            return;
+        }
+        File tmp = tempFile(dir);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp.toPath()), BUFFER_SIZE))) {
+            out.write(MAGIC);
+            out.write(CHUNKED);
+            out.writeInt(ids.size());
+            for (int i = 0; i < ids.size(); i += 1) {
+                out.write(Pack.toBytes(ids.get(i)));
+                out.writeInt(lengths.get(i));
+            }
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        install(tmp, dir, id);
+    }
+
+    /**
+     * copies object ID of DIR into OUT with transferTo if it is stored uncompressed (or has no header)
+     * @return the number of bytes copied, or -1 if the object has to be decoded (or isn't there)
+     */
+    private static long copyStored(File dir, String id, FileChannel out) throws IOException {
+        File loose = findLoose(dir, id);
+        if (loose != null) {
+            try (FileChannel in = FileChannel.open(loose.toPath(), StandardOpenOption.READ)) {
+                long start = contentsStart(in, 0, in.size());
+                return start < 0 ? -1 : transfer(in, start, in.size() - start, out);
+            }
+        }
+        for (Pack p : Pack.packsIn(dir)) {
+            long[] region = p.region(id);
+            if (region != null) {
+                long start = contentsStart(p.channel(), region[0], region[1]);
+                return start < 0 ? -1 : transfer(p.channel(), start, region[0] + region[1] - start, out);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * where the contents of the object stored in IN at [OFFSET, OFFSET + LENGTH) start,
+     * or -1 if they are compressed or a delta
+     */
+    private static long contentsStart(FileChannel in, long offset, long length) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate((int) Math.min(HEADER_LENGTH, length));
+        while (header.hasRemaining()) {
+            if (in.read(header, offset + header.position()) < 0) {
+                break;
+            }
+        }
+        byte[] bytes = header.array();
+        if (bytes.length == HEADER_LENGTH && Arrays.equals(bytes, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            return bytes[MAGIC.length] == STORED ? offset + HEADER_LENGTH : -1;
+        }
+        return offset; //legacy object, written before there was a header
+    }
+
+    private static long transfer(FileChannel in, long position, long count, FileChannel out) throws IOException {
+        long done = 0;
+        while (done < count) {
+            long n = in.transferTo(position + done, count - done, out);
+            if (n <= 0) {
+                throw new IOException("Truncated object.");
+            }
+            done += n;
+        }
+        return done;
+    }
+
+    /** Wraps the stored bytes STORED of an object of DIR into a stream of the object's contents. */
+    private static InputStream decode(File dir, InputStream stored) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(stored, HEADER_LENGTH);
+        byte[] header = in.readNBytes(HEADER_LENGTH);
+        if (header.length == HEADER_LENGTH
+                && Arrays.equals(header, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            switch (header[MAGIC.length]) {
+                case STORED:
+                    return in;
+                case DEFLATED:
+                    return new InflaterInputStream(in, new Inflater(), BUFFER_SIZE);
+                case DELTA:
+                    byte[] baseID = in.readNBytes(20);
+                    in.read(); //depth
+                    byte[] delta;
+                    try (InputStream instructions = new InflaterInputStream(in)) {
+                        delta = instructions.readAllBytes();
+                    }
+                    byte[] base = deltaBase(dir, Pack.toHex(baseID));
+                    return new ByteArrayInputStream(Delta.apply(base, delta));
+                case CHUNKED:
+                    List<String> chunks = readChunks(in);
+                    in.close();
+                    Iterator<String> next = chunks.iterator();
+                    return new SequenceInputStream(new Enumeration<InputStream>() {
+                        @Override
+                        public boolean hasMoreElements() {
+                            return next.hasNext();
+                        }
+
+                        @Override
+                        public InputStream nextElement() {
+                            return open(Chunker.CHUNKS, next.next());
+                        }
+                    });
+                default:
+                    in.close();
+                    throw Utils.error("Unknown object encoding %d.", header[MAGIC.length]);
+            }
+        }
+        in.unread(header); //legacy object, written before there was a header
+        return in;
+    }
+
+    /**
+     * saves CONTENTS as object ID in DIR
+     * objects are named by their contents, so one that is already stored is left alone
+     */
+    static void write(File dir, String id, byte[] contents) {
+        if (contains(dir, id)) {
+            return;
+        }
+        File tmp = tempFile(dir);
+        try (OutputStream out = openWrite(tmp)) {
+            out.write(contents);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        install(tmp, dir, id);
+    }
+
+    /**
+     * saves CONTENTS as the new stored form of the existing object ID of DIR (it must hold the same object);
+     * the loose copy is read before any packed one, so this also works for packed objects
+     */
+    static void replace(File dir, String id, byte[] contents) {
+        File tmp = tempFile(dir);
+        try (OutputStream out = openWrite(tmp)) {
+            out.write(contents);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        File old = findLoose(dir, id);
+        try {
+            Files.createDirectories(looseFile(dir, id).getParentFile().toPath());
+            Files.move(tmp.toPath(), looseFile(dir, id).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        unsynced(looseFile(dir, id));
+        if (old != null && !old.equals(looseFile(dir, id))) {
+            old.delete(); //the copy from before fan-out
+        }
+    }
+
+    /**
+     * saves object ID of DIR as the instructions DELTA that rebuild it from BASEID
+     * (see Delta); the instructions are deflated like any other object
+     */
+    static void writeDelta(File dir, String id, String baseID, byte[] delta) {
+        if (contains(dir, id)) {
+            return;
+        }
+        int depth = depth(dir, baseID) + 1;
+        if (depth > MAX_DEPTH) {
+            throw Utils.error("Delta chain of %s is too long.", id);
+        }
+        File tmp = tempFile(dir);
+        Deflater deflater = new Deflater(compressionLevel());
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp.toPath()), BUFFER_SIZE)) {
+            out.write(MAGIC);
+            out.write(DELTA);
+            out.write(Pack.toBytes(baseID));
+            out.write(depth);
+            DeflaterOutputStream instructions = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+            instructions.write(delta);
+            instructions.finish();
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            deflater.end();
+        }
+        install(tmp, dir, id);
+    }
+
+    /** Number of deltas to apply to rebuild object ID of DIR, 0 if it is stored whole. */
+    static int depth(File dir, String id) {
+        byte[] header = header(dir, id);
+        if (header[MAGIC.length] == DELTA && header.length == HEADER_LENGTH + 20 + 1) {
+            return header[HEADER_LENGTH + 20] & 0xff;
+        }
+        return 0;
+    }
+
+    /** The encoding of object ID of DIR (STORED, DEFLATED, DELTA or CHUNKED); legacy objects are STORED. */
+    static int encoding(File dir, String id) {
+        return header(dir, id)[MAGIC.length];
+    }
+
+    /**
+     * the first bytes of the stored form of object ID of DIR: its header, then the base id and depth
+     * of a delta; a legacy object, which has no header, gets the header of a STORED one
+     */
+    private static byte[] header(File dir, String id) {
+        try (InputStream in = openStored(dir, id)) {
+            byte[] header = in.readNBytes(HEADER_LENGTH + 20 + 1);
+            if (header.length >= HEADER_LENGTH
+                    && Arrays.equals(header, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+                return header;
+            }
+            byte[] stored = Arrays.copyOf(MAGIC, HEADER_LENGTH);
+            stored[MAGIC.length] = STORED;
+            return stored;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Contents of the delta base ID of DIR, from the cache when it was rebuilt recently. */
+    private static synchronized byte[] deltaBase(File dir, String id) {
+        String key = dir.getName() + "/" + id;
+        byte[] contents = DELTA_BASES.get(key);
+        if (contents != null) {
+            return contents;
+        }
+        contents = read(dir, id);
+        DELTA_BASES.put(key, contents);
+        deltaBasesSize += contents.length;
+        long limit = Config.getInt("delta.cacheSize", DEFAULT_DELTA_CACHE);
+        Iterator<Map.Entry<String, byte[]>> oldest = DELTA_BASES.entrySet().iterator();
+        while (deltaBasesSize > limit && oldest.hasNext()) {
+            deltaBasesSize -= oldest.next().getValue().length;
+            oldest.remove();
+        }
+        return contents;
+    }
+
+    /**
+     * opens a stream that writes an encoded object into FILE: the header goes out first
+     * and the contents are deflated on their way to disk as they are written
+     */
+    static OutputStream openWrite(File file) throws IOException {
+        int level = compressionLevel();
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(file.toPath()), BUFFER_SIZE);
+        out.write(MAGIC);
+        if (level == 0) {
+            out.write(STORED);
+            return out;
+        }
+        out.write(DEFLATED);
+        Deflater deflater = new Deflater(level);
+        return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    /** A fresh temporary file in DIR for an object being written. */
+    static File tempFile(File dir) {
+        try {
+            return Files.createTempFile(dir.toPath(), "tmp-", "").toFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * moves the fully written object TMP into place as ID, so readers never see half an object
+     * if ID got stored in the meantime, TMP is simply dropped
+     */
+    static void install(File tmp, File dir, String id) {
+        if (contains(dir, id)) {
+            tmp.delete();
+            return;
+        }
+        try {
+            Files.createDirectories(looseFile(dir, id).getParentFile().toPath());
+            Files.move(tmp.toPath(), looseFile(dir, id).toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        unsynced(looseFile(dir, id));
+    }
+
+    private static void unsynced(File object) {
+        synchronized (UNSYNCED) {
+            UNSYNCED.add(object);
+        }
+    }
+
+    /**
+     * makes every object this process installed durable, with one group of fsyncs: each object,
+     * then each folder that got a new entry (the fan-out folder and, as it may be new, the object
+     * directory holding it); Transaction calls it before it writes anything that could point at them
+     */
+    static void sync() {
+        List<File> objects;
+        synchronized (UNSYNCED) {
+            if (UNSYNCED.isEmpty()) {
+                return;
+            }
+            objects = new ArrayList<>(UNSYNCED);
+            UNSYNCED.clear();
+        }
+        LinkedHashSet<File> dirs = new LinkedHashSet<>();
+        for (File object : objects) {
+            Transaction.force(object);
+            dirs.add(object.getParentFile());
+            dirs.add(object.getParentFile().getParentFile());
+        }
+        for (File dir : dirs) {
+            Transaction.force(dir);
+        }
+    }
+
+    /** The zlib level objects are written with, 0 to 9, or -1 for zlib's default. */
+    static int compressionLevel() {
+        int level = Config.getInt("compression", Deflater.DEFAULT_COMPRESSION);
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw Utils.error("Setting compression must be between -1 and 9.");
+        }
+        return level;
+    }
+
+    /**
+     * hands the id of every loose object of DIR to ACTION, in no particular order, as the
+     * fan-out folders are read (skips HEAD, the packs and anything else that isn't an object)
+     */
+    static void forEachLoose(File dir, Consumer<String> action) {
+        if (!dir.isDirectory()) {
+            return;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir.toPath())) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (name.length() == FANOUT && name.matches("[0-9a-f]*") && Files.isDirectory(entry)) {
+                    try (DirectoryStream<Path> objects = Files.newDirectoryStream(entry)) {
+                        for (Path object : objects) {
+                            String id = name + object.getFileName();
+                            if (isId(id)) {
+                                action.accept(id);
+                            }
+                        }
+                    }
+                } else if (isId(name)) {
+                    action.accept(name); //from before fan-out
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Ids of the loose objects in DIR, in no particular order. */
+    static List<String> looseIds(File dir) {
+        List<String> ids = new ArrayList<>();
+        forEachLoose(dir, ids::add);
+        return ids;
+    }
+
+    /** Ids of every object in DIR, loose or packed, in no particular order. */
+    static List<String> list(File dir) {
+        LinkedHashSet<String> ids = new LinkedHashSet<>(looseIds(dir));
+        for (Pack p : Pack.packsIn(dir)) {
+            ids.addAll(p.ids());
+        }
+        return Collections.unmodifiableList(new ArrayList<>(ids));
+    }
+
+    /** Moves the loose objects of DIR left by a gitlet from before fan-out into their fan-out folders. */
+    static void fanOut(File dir) {
+        for (String id : looseIds(dir)) {
+            File flat = Utils.join(dir, id);
+            if (flat.isFile()) {
+                try {
+                    Files.createDirectories(looseFile(dir, id).getParentFile().toPath());
+                    Files.move(flat.toPath(), looseFile(dir, id).toPath(),
+                            StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+    }
+}
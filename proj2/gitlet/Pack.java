@@ -0,0 +1,352 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/** A packfile: many objects concatenated into one append-only file, plus
+ *  a sorted index so an object can be found without a directory lookup.
+ *
+ *  .pack -- "PACK", version, object count, then the objects back to back
+ *  .idx  -- magic, version, fanout table, sorted 20-byte ids, offsets,
+ *           lengths
+ *
+ *  fanout[b] is the number of ids whose first byte is <= b, so the ids
+ *  starting with byte b sit in [fanout[b - 1], fanout[b]) and only that
+ *  slice has to be binary searched.
+ *
+ *  @author Ruth Frausto
+ */
+class Pack {
+
+    /** Name of the folder (inside an object directory) holding packs. */
+    static final String PACK_DIR = "pack";
+
+    private static final int PACK_SIGNATURE = 0x5041434b; // "PACK"
+    private static final int IDX_SIGNATURE = 0xff744f63;
+    private static final int VERSION = 1;
+    private static final int ID_BYTES = 20;
+    private static final int FANOUT_START = 8;
+    private static final int IDS_START = FANOUT_START + 256 * 4;
+
+    /** Packs already opened in this process, by object directory. */
+    private static final HashMap<File, List<Pack>> OPENED = new HashMap<>();
+
+    private final File packFile;
+    private final MappedByteBuffer index;
+    private final int count;
+    private FileChannel channel;
+
+    private Pack(File packFile, File idxFile) {
+        this.packFile = packFile;
+        try (FileChannel idx = FileChannel.open(idxFile.toPath(), StandardOpenOption.READ)) {
+            this.index = idx.map(FileChannel.MapMode.READ_ONLY, 0, idx.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (index.getInt(0) != IDX_SIGNATURE || index.getInt(4) != VERSION) {
+            throw Utils.error("Corrupt pack index %s.", idxFile.getName());
+        }
+        this.count = index.getInt(FANOUT_START + 255 * 4);
+    }
+
+    /**
+     * returns the packs of the object directory DIR, opening them the first time
+     * a pack without its .idx is ignored (repack was interrupted before finishing)
+     */
+    static synchronized List<Pack> packsIn(File dir) {
+        List<Pack> packs = OPENED.get(dir);
+        if (packs != null) {
+            return packs;
+        }
+        packs = new ArrayList<>();
+        File packDir = Utils.join(dir, PACK_DIR);
+        List<String> names = Utils.plainFilenamesIn(packDir);
+        if (names != null) {
+            for (String name : names) {
+                if (!name.endsWith(".pack")) {
+                    continue;
+                }
+                String base = name.substring(0, name.length() - ".pack".length());
+                File idx = Utils.join(packDir, base + ".idx");
+                if (idx.isFile()) {
+                    packs.add(new Pack(Utils.join(packDir, name), idx));
+                }
+            }
+        }
+        OPENED.put(dir, packs);
+        return packs;
+    }
+
+    /** Returns true if ID is in this pack. */
+    boolean contains(String id) {
+        return position(id) >= 0;
+    }
+
+    /** Returns a stream of the stored bytes of ID, or null if ID is not in this pack. */
+    InputStream open(String id) {
+        int pos = position(id);
+        if (pos < 0) {
+            return null;
+        }
+        try {
+            return new Region(channel(), offsetAt(pos), lengthAt(pos));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the offset and length of the stored bytes of ID in this pack, or null if ID is not in it. */
+    long[] region(String id) {
+        int pos = position(id);
+        if (pos < 0) {
+            return null;
+        }
+        return new long[] {offsetAt(pos), lengthAt(pos)};
+    }
+
+    /** Returns the ids stored in this pack, in sorted order. */
+    List<String> ids() {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i += 1) {
+            ids.add(toHex(idAt(i)));
+        }
+        return ids;
+    }
+
+    /**
+     * binary search for ID, only inside the slice of the index the fanout table points to
+     * @return the position of ID in the index, or -1 if it is not there
+     */
+    private int position(String id) {
+        byte[] key = toBytes(id);
+        if (key == null) {
+            return -1;
+        }
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : fanout(first - 1);
+        int hi = fanout(first) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = Arrays.compareUnsigned(idAt(mid), key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int fanout(int b) {
+        return index.getInt(FANOUT_START + b * 4);
+    }
+
+    private byte[] idAt(int pos) {
+        byte[] id = new byte[ID_BYTES];
+        index.get(IDS_START + pos * ID_BYTES, id);
+        return id;
+    }
+
+    private long offsetAt(int pos) {
+        return index.getLong(IDS_START + count * ID_BYTES + pos * 8);
+    }
+
+    private long lengthAt(int pos) {
+        return index.getLong(IDS_START + count * ID_BYTES + count * 8 + pos * 8);
+    }
+
+    synchronized FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(packFile.toPath(), StandardOpenOption.READ);
+        }
+        return channel;
+    }
+
+    /** Closes the pack file; the index mapping goes once nothing refers to this pack. */
+    private synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        channel = null;
+    }
+
+    /**
+     * reads the LENGTH bytes at OFFSET of a pack with positional reads,
+     * so any number of objects of the same pack can be open at once
+     */
+    private static class Region extends InputStream {
+        private final FileChannel ch;
+        private long position;
+        private final long end;
+
+        Region(FileChannel ch, long offset, long length) {
+            this.ch = ch;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int n = (int) Math.min(len, end - position);
+            int got = ch.read(ByteBuffer.wrap(b, off, n), position);
+            if (got < 0) {
+                throw new IOException("Truncated pack.");
+            }
+            position += got;
+            return got;
+        }
+    }
+
+    /**
+     * folds every loose object of the object directory DIR into a new pack
+     * the pack is written and forced first, and its index last, to a temporary file renamed into
+     * place once forced; the loose files are only deleted once both exist, so an interrupted repack
+     * never loses an object nor leaves a pack with a partial index
+     */
+    static void repack(File dir) {
+        List<String> loose = ObjectStore.looseIds(dir);
+        if (loose.isEmpty()) {
+            return;
+        }
+        Collections.sort(loose); //the index has to be sorted
+        File packDir = Utils.join(dir, PACK_DIR);
+        packDir.mkdir();
+        String name = "pack-" + Utils.sha1(String.join("", loose));
+        File packFile = Utils.join(packDir, name + ".pack");
+        File idxFile = Utils.join(packDir, name + ".idx");
+
+        int n = loose.size();
+        long[] offsets = new long[n];
+        long[] lengths = new long[n];
+        try (FileChannel out = FileChannel.open(packFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(12);
+            header.putInt(PACK_SIGNATURE).putInt(VERSION).putInt(n).flip();
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            for (int i = 0; i < n; i += 1) {
+                offsets[i] = out.position();
+                File f = ObjectStore.findLoose(dir, loose.get(i));
+                try (FileChannel in = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+                    long size = in.size();
+                    long done = 0;
+                    while (done < size) {
+                        done += in.transferTo(done, size - done, out);
+                    }
+                    lengths[i] = size;
+                    out.position(offsets[i] + size);
+                }
+            }
+            out.force(true);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+
+        ByteBuffer idx = ByteBuffer.allocate(IDS_START + n * (ID_BYTES + 16));
+        idx.putInt(IDX_SIGNATURE).putInt(VERSION);
+        int[] fanout = new int[256];
+        for (String id : loose) {
+            fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+        }
+        int running = 0;
+        for (int b = 0; b < 256; b += 1) {
+            running += fanout[b];
+            idx.putInt(running);
+        }
+        for (String id : loose) {
+            idx.put(toBytes(id));
+        }
+        for (long offset : offsets) {
+            idx.putLong(offset);
+        }
+        for (long length : lengths) {
+            idx.putLong(length);
+        }
+        //the idx is what makes packsIn open a pack, so it only appears once it is complete and on disk
+        try {
+            Path tmp = Files.createTempFile(packDir.toPath(), name + "-", ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                idx.flip();
+                while (idx.hasRemaining()) {
+                    out.write(idx);
+                }
+                out.force(true);
+            }
+            Files.move(tmp, idxFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            Transaction.force(packDir); //the pack and its index are named on disk before any loose copy goes
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+
+        for (String id : loose) {
+            File f = ObjectStore.findLoose(dir, id);
+            f.delete();
+            f.getParentFile().delete(); //only goes once its fan-out folder is empty
+        }
+        forget(dir);
+    }
+
+    /** Drops the packs opened for DIR, closing their files, so packsIn lists them again with the new one. */
+    private static synchronized void forget(File dir) {
+        List<Pack> packs = OPENED.remove(dir);
+        if (packs == null) {
+            return;
+        }
+        for (Pack p : packs) {
+            p.close();
+        }
+    }
+
+    /** Returns the 20 raw bytes of the hex sha1ID ID, or null if ID is not one. */
+    static byte[] toBytes(String id) {
+        if (!ObjectStore.isId(id)) {
+            return null;
+        }
+        byte[] result = new byte[ID_BYTES];
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            result[i] = (byte) Integer.parseInt(id.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** Returns the hex form of the raw id BYTES. */
+    static String toHex(byte[] bytes) {
+        //called for every entry of every tree read, so no String.format here
+        char[] result = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i += 1) {
+            result[2 * i] = Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+            result[2 * i + 1] = Character.forDigit(bytes[i] & 0xf, 16);
+        }
+        return new String(result);
+    }
+}
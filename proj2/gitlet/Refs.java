@@ -0,0 +1,150 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** The branches: the commit each one points to, and which one is current.
+ *  .gitlet/packed-refs holds every branch in one file, sorted by name, one
+ *  "<sha1ID> <name>" line each, so listing them all is one sequential read.
+ *  Updating a branch only writes its loose ref, .gitlet/branches/<name>,
+ *  which overrides its packed line; once there are more than
+ *  "refs.looseLimit" loose refs (see Config), the next update folds them
+ *  into packed-refs.  Deleting a branch deletes its loose ref and, if it
+ *  was packed, rewrites packed-refs without it.  repack packs them too.
+ *
+ *  The table of branches and the name of the current one are read once per
+ *  process and kept in the Cache with the other refs, so a command asking
+ *  for them several times (or a daemon running many commands) reads them
+ *  once.  Every write goes through Transaction and updates the table.
+ *
+ *  @author Ruth Frausto
+ */
+class Refs {
+
+    static final File PACKED = Utils.join(Repository.GITLET_DIR, "packed-refs");
+
+    private static final int DEFAULT_LOOSE_LIMIT = 64;
+    /** names of the table and current branch in the Cache; a branch name can't hold a '/' */
+    private static final String TABLE = "/branches";
+    private static final String CURRENT = "/current";
+
+    /** Every branch, as the open transaction has left them. */
+    private static class Table {
+        /** key: branch name ---> value: sha1ID of its commit, packed or loose */
+        final TreeMap<String, String> tips = new TreeMap<>();
+        /** the branches with a loose ref */
+        final TreeSet<String> loose = new TreeSet<>();
+        /** the branches with a line in packed-refs */
+        final TreeSet<String> packed = new TreeSet<>();
+    }
+
+    /** Returns the names of every branch, sorted. */
+    static List<String> names() {
+        return new ArrayList<>(table().tips.keySet());
+    }
+
+    /** Returns true if there is a branch named NAME. */
+    static boolean exists(String name) {
+        return table().tips.containsKey(name);
+    }
+
+    /** Returns the sha1ID of the commit of branch NAME, or null if there is no such branch. */
+    static String get(String name) {
+        return table().tips.get(name);
+    }
+
+    /** Points branch NAME at the commit SHA1ID, creating it if needed. */
+    static void set(String name, String sha1ID) {
+        Table t = table();
+        Transaction.write(Utils.join(Repository.BRANCHES, name), sha1ID);
+        t.tips.put(name, sha1ID);
+        t.loose.add(name);
+        if (t.loose.size() > Config.getInt("refs.looseLimit", DEFAULT_LOOSE_LIMIT)) {
+            pack();
+        }
+    }
+
+    /** Deletes branch NAME. */
+    static void delete(String name) {
+        Table t = table();
+        if (t.loose.remove(name)) {
+            Transaction.delete(Utils.join(Repository.BRANCHES, name));
+        }
+        t.tips.remove(name);
+        if (t.packed.remove(name)) {
+            writePacked(t);
+        }
+    }
+
+    /** Folds every loose ref into packed-refs; packed-refs is written before any loose ref goes. */
+    static void pack() {
+        Table t = table();
+        if (t.loose.isEmpty()) {
+            return;
+        }
+        t.packed.addAll(t.loose);
+        writePacked(t);
+        for (String name : t.loose) {
+            Transaction.delete(Utils.join(Repository.BRANCHES, name));
+        }
+        t.loose.clear();
+    }
+
+    /** Returns the name of the current branch. */
+    static String current() {
+        String name = Cache.get(Cache.REF, CURRENT, String.class);
+        if (name == null) {
+            name = Transaction.readString(Utils.join(Repository.CURRENT_BRANCH, "current branch"));
+            Cache.put(Cache.REF, CURRENT, name, 100);
+        }
+        return name;
+    }
+
+    /** Makes NAME the current branch. */
+    static void setCurrent(String name) {
+        Transaction.write(Utils.join(Repository.CURRENT_BRANCH, "current branch"), name);
+        Cache.put(Cache.REF, CURRENT, name, 100);
+    }
+
+    private static void writePacked(Table t) {
+        StringBuilder sb = new StringBuilder();
+        for (String name : t.packed) {
+            sb.append(t.tips.get(name)).append(' ').append(name).append('\n');
+        }
+        Transaction.write(PACKED, sb.toString());
+    }
+
+    /** Returns the table, reading packed-refs and then the loose refs over it the first time. */
+    private static Table table() {
+        Table t = Cache.get(Cache.REF, TABLE, Table.class);
+        if (t != null) {
+            return t;
+        }
+        t = new Table();
+        if (Transaction.exists(PACKED)) {
+            String packed = new String(Transaction.read(PACKED), StandardCharsets.UTF_8);
+            for (String line : packed.split("\n")) {
+                int space = line.indexOf(' ');
+                if (space < 0) {
+                    continue;
+                }
+                String name = line.substring(space + 1);
+                t.tips.put(name, line.substring(0, space));
+                t.packed.add(name);
+            }
+        }
+        List<String> loose = Transaction.filesIn(Repository.BRANCHES);
+        if (loose != null) {
+            for (String name : loose) {
+                t.tips.put(name, Transaction.readString(Utils.join(Repository.BRANCHES, name)));
+                t.loose.add(name);
+            }
+        }
+        Cache.put(Cache.REF, TABLE, t, 100L * (t.tips.size() + 1));
+        return t;
+    }
+}
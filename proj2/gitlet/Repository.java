@@ -2,9 +2,16 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /** Represents a gitlet repository.
  *  @author Ruth Frausto <3
@@ -24,8 +31,11 @@ public class Repository {
 
     private static Commit HEAD = null;
     private static Commit master = null;
-    private static HashMap<String, LinkedList<String>> messagesToCommits;
     private static String currentBranch;
+    /** commits listed when an abbreviated commit id is ambiguous */
+    private static final int AMBIGUOUS_SHOWN = 3;
+    /** fewest digits log --abbrev prints of a commit id */
+    private static final int ABBREV_MIN = 4;
 
 
     /**
@@ -33,12 +43,14 @@ public class Repository {
      *      -commits/ -- folder to store the commits
      *              -initialCommit --file containing the initial commit
      *      -blobs/ --folder to store all the file objects
+     *      -trees/ --folder to store the trees mapping a commit's files to their blobs
      */
     public static void initCommand() {
 
         GITLET_DIR.mkdir();
         Commit.COMMITS.mkdir();
         Staging.BLOBS.mkdir();
+        Tree.TREES.mkdir();
         Hash.STAGED_FILES.mkdir();
         BRANCHES.mkdir();
         CURRENT_BRANCH.mkdir();
@@ -52,15 +64,15 @@ public class Repository {
 
         Hash h = new Hash();
         Commit initialCommit = new Commit(h);
-        Utils.writeObject(INITCOMMIT, initialCommit);
-        String message = initialCommit.getMessage();//computing the commit's sha1ID
-        Hash msgToCommit = new Hash(message, initialCommit.getSha1ID()); //creating a hashMap object to store msg and commitID
-        Hash.saveHashMessages(msgToCommit);
+        Utils.writeContents(INITCOMMIT, initialCommit.getSha1ID());
         /**
          * save init commit will require the directory, and the initial commit object
          */
         Hash.saveStagedFiles(h);
         Commit.saveCommit(initialCommit);
+        CommitGraph.add(initialCommit);
+        Messages.add(initialCommit.getMessage(), initialCommit.getSha1ID()); //journal of messages, for find
+        CommitJournal.add(initialCommit); //journal of commits, for global-log
         saveBranch(initialCommit.getSha1ID(), "master"); //path to commit in the COMMITS dir using sha1ID
         setCurrentBranchName("master"); //saving just the name of branch as string
         updateHead(initialCommit); //will also assign a pointer to the commit with the name of the current branch
@@ -91,14 +103,20 @@ public class Repository {
         String parentID = readHead().getSha1ID();
         Commit currCommit = new Commit(message, parentID, filesToCommit, filesToRemove);
         Commit.saveCommit(currCommit);
-        Hash msgHash = readHashMessages();
-        messagesToCommits = msgHash.getMsgToCommits();
-        putMessageAndCommit(currCommit.getMessage(), currCommit.getSha1ID(), messagesToCommits);
-        saveMessagesToCommit(msgHash);
-        updateHead(currCommit);
-        saveBranch(currCommit.getSha1ID(), getCurrentBranchName());
-        updateCurrentBranch(currCommit.getSha1ID());
-        Staging.clearStagingArea();
+        CommitGraph.add(currCommit);
+        //the journals, refs and staging area change together or not at all (see Transaction)
+        Transaction.begin();
+        try {
+            Messages.add(currCommit.getMessage(), currCommit.getSha1ID());
+            CommitJournal.add(currCommit);
+            updateHead(currCommit);
+            saveBranch(currCommit.getSha1ID(), getCurrentBranchName());
+            updateCurrentBranch(currCommit.getSha1ID());
+            Staging.clearStagingArea();
+            Transaction.commit();
+        } finally {
+            Transaction.abort();
+        }
         return;
 
     }
@@ -111,10 +129,17 @@ public class Repository {
             return;
         }
 
-        List<String> branches = Utils.plainFilenamesIn(BRANCHES);
-        if (!branches.contains(branch)) {
-            System.out.println("A branch with that name does not exist.");
-            return;
+        //a branch, or a commit given by its (abbreviated) id
+        String givenCommitID = null;
+        if (!Refs.exists(branch)) {
+            if (!branch.matches("[0-9a-f]+") || CommitGraph.matching(branch, 1).isEmpty()) {
+                System.out.println("A branch with that name does not exist.");
+                return;
+            }
+            givenCommitID = resolveCommit(branch);
+            if (givenCommitID == null) {
+                return;
+            }
         }
 
         if (getCurrentBranchName().equals(branch)) {
@@ -125,72 +150,52 @@ public class Repository {
 
         List<String> filesCWD = Utils.plainFilenamesIn(CWD); //if a file might get lost
         HashMap<String, String> currCommitFiles = readHead().getFilesInCommit();
-        for (String file : filesCWD) {
-            if (!currCommitFiles.containsKey(file)) {
-                if (!stagedFiles.containsKey(file)) {
-                    System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                    return;
-                }
-            }
+        if (!Scan.untracked(filesCWD, currCommitFiles, stagedFiles).isEmpty()) {
+            System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
+            return;
         }
 
         //get split point; where both branches have the same parent sha1ID
         String currBranchName = getCurrentBranchName(); //current branch
 
-        Commit a = getSpecifiedBranch(currBranchName); //wont be the same after the while loop
-        Commit b = getSpecifiedBranch(branch); //wont be the same after the while loop
-        Commit currentBranch = a;
-        Commit specifiedBranch = b;
-        Commit splitPoint = null;
-
-        //iterate until both parent's sha1ID are the same to find the common commit (split point)
-        while (a.getParentSha1ID() != null || b.getParentSha1ID() != null) {
-            if (a.getParentSha1ID() == null) {
-                if (b.getParentSha1ID() == null) { //case 1 - tree commits with 3 commits; 1 parent and 2 children TODO: this might be redundant bc of the while condition
-                    System.out.println("Given branch is an ancestor of the current branch.");
-                    return;
-                } else if (b.getParentSha1ID().equals(a.getSha1ID())) { //case 2 - next to each other
-                    System.out.println("Given branch is an ancestor of the current branch.");
-                    return;
-                } else { //case 4 - not next to each other
-                    b = Commit.fromFile(b.getParentSha1ID());
-                }
-            } else if (b.getParentSha1ID() == null) {
-                if (a.getParentSha1ID().equals(b.getSha1ID())) { //case 2
-                    System.out.println("Given branch is an ancestor of the current branch.");
-                    return;
-                } else { //case 3
-                    a = Commit.fromFile(a.getParentSha1ID());
-                }
-            } else if (a.getParentSha1ID().equals(b.getSha1ID())) {
-                splitPoint = Commit.fromFile(a.getSha1ID());
-                checkoutBranch(currBranchName);
-                System.out.println("Current branch fast-forwarded.");
-                return;
-            } else if (b.getParentSha1ID().equals(a.getSha1ID())) {
-                splitPoint = Commit.fromFile(b.getSha1ID()); //not actually split point, change it
+        Commit currentBranch = getSpecifiedBranch(currBranchName);
+        Commit specifiedBranch = givenCommitID == null ? getSpecifiedBranch(branch) : Commit.fromFile(givenCommitID);
+        //best common ancestor of both tips, found on the commit graph (both parents of merge commits count)
+        String currentID = currentBranch.getSha1ID();
+        String givenID = specifiedBranch.getSha1ID();
+        String splitID = MergeBase.find(currentID, givenID);
+        if (givenID.equals(splitID)) {
+            System.out.println("Given branch is an ancestor of the current branch.");
+            return;
+        }
+        if (currentID.equals(splitID)) {
+            if (givenCommitID == null) {
                 checkoutBranch(branch);
-                System.out.println("Current branch fast-forwarded.");
-
-                return;
             } else {
-                    a = Commit.fromFile(a.getParentSha1ID());
-                    b = Commit.fromFile(b.getParentSha1ID());
+                reset(givenCommitID); //moves the current branch up to the commit
             }
+            System.out.println("Current branch fast-forwarded.");
+            return;
         }
+        Commit splitPoint = splitID == null ? null : Commit.fromFile(splitID);
 
 
         if (splitPoint != null) {
-            HashMap<String, String> filesSplitPoint = splitPoint.getFilesInCommit();//files in split point
-            HashMap<String, String> filesInCurrentBranch = currentBranch.getFilesInCommit();
-            HashMap<String, String> filesInBranch = specifiedBranch.getFilesInCommit();
+            //only the files of buckets that differ between the three trees; the rest are the same in all of them
+            //and none of the cases below would touch them
+            List<HashMap<String, String>> differing = Tree.differing(splitPoint.getTreeID(),
+                    currentBranch.getTreeID(), specifiedBranch.getTreeID());
+            HashMap<String, String> filesSplitPoint = differing.get(0);//files in split point
+            HashMap<String, String> filesInCurrentBranch = differing.get(1);
+            HashMap<String, String> filesInBranch = differing.get(2);
             //case 1: files modified in branch but not in current branch -- stage them for commit
             for (String file : filesSplitPoint.keySet()) {
                 if (filesInBranch.containsKey(file)) {
                     if (!filesSplitPoint.get(file).equals(filesInBranch.get(file))) { //contents of branch have been modified since split point
                         if (filesInCurrentBranch.containsKey(file)) {
                             if (filesInCurrentBranch.get(file).equals(filesSplitPoint.get(file))) { //contents in current branch were not modified since split point
-                             stagedFiles.put(file, filesInBranch.get(file));
+                                checkoutCommitAndFile(givenID, file);
+                                stagedFiles.put(file, filesInBranch.get(file));
                             }
                         }
                     }
@@ -245,7 +250,8 @@ public class Repository {
             for (String file : filesInBranch.keySet()) {
                 if (!filesSplitPoint.containsKey(file)) {
                     if (!filesInCurrentBranch.containsKey(file)) {
-                        checkoutCommitAndFile(specifiedBranch.getSha1ID(), file);
+                        checkoutCommitAndFile(givenID, file);
+                        stagedFiles.put(file, filesInBranch.get(file));
                     }
                 }
             }
@@ -260,6 +266,8 @@ public class Repository {
                     if (filesInCurrentBranch.get(file).equals(filesSplitPoint.get(file))) {
                         if (!filesInBranch.containsKey(file)) {
                             stagedForRemoval.add(file);
+                            Utils.restrictedDelete(Utils.join(CWD, file));
+                            Index.forget(file);
                         }
                     }
                 }
@@ -281,24 +289,29 @@ public class Repository {
             }
             //TODO: case 8
 
-            Commit merged = new Commit("Merged " + branch + " into " + currBranchName, currBranchName, branch, stagedFiles, stagedForRemoval);
+            Commit merged = new Commit("Merged " + branch + " into " + currBranchName, currentID, givenID,
+                    stagedFiles, stagedForRemoval);
             Commit.saveCommit(merged);
-            Hash msgHash = readHashMessages();
-            messagesToCommits = msgHash.getMsgToCommits();
-            putMessageAndCommit(merged.getMessage(), merged.getSha1ID(), messagesToCommits);
-            saveMessagesToCommit(msgHash);
-            updateHead(merged);
-            saveBranch(merged.getSha1ID(), getCurrentBranchName());
-            updateCurrentBranch(merged.getSha1ID());
-            Staging.clearStagingArea();
+            CommitGraph.add(merged);
+            Transaction.begin();
+            try {
+                Messages.add(merged.getMessage(), merged.getSha1ID());
+                CommitJournal.add(merged);
+                updateHead(merged);
+                saveBranch(merged.getSha1ID(), getCurrentBranchName());
+                updateCurrentBranch(merged.getSha1ID());
+                Staging.clearStagingArea();
+                Transaction.commit();
+            } finally {
+                Transaction.abort();
+            }
             return;
         }
     }
 
     public static void checkoutBranch(String branchName) {
 
-        List<String> branches = Utils.plainFilenamesIn(BRANCHES); //to check if the branchName is valid
-        if (!branches.contains(branchName)) {
+        if (!Refs.exists(branchName)) {
             System.out.println("No such branch exists.");
             return;
         }
@@ -311,33 +324,16 @@ public class Repository {
         List<String> filesCWD = Utils.plainFilenamesIn(CWD); //if a file might get lost
         HashMap<String, String> stagedFiles = Hash.fromFileHash().getStagedFiles();
         HashMap<String, String> currCommitFiles = readHead().getFilesInCommit();
-        for (String file : filesCWD) {
-            if (!currCommitFiles.containsKey(file)) {
-                if (!stagedFiles.containsKey(file)) {
-                    System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                    return;
-                }
-            }
+        if (!Scan.untracked(filesCWD, currCommitFiles, stagedFiles).isEmpty()) {
+            System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
+            return;
         }
 
         Commit c = getSpecifiedBranch(branchName);
         HashMap<String, String> filesInBranch = c.getFilesInCommit();
 
-        for (String cwdFile: filesCWD) {
-            if (filesInBranch.containsKey(cwdFile)) {
-                substituteFileContents(filesInBranch.get(cwdFile), cwdFile);
-            } else {
-                File f = Utils.join(CWD, cwdFile);
-                Utils.restrictedDelete(f);
-            }
-        }
-
-        filesCWD = Utils.plainFilenamesIn(CWD);
-        for (String file : filesInBranch.keySet()) {
-            if (!filesCWD.contains(file)) {
-                writeContentsCWD(filesInBranch.get(file), file);
-            }
-        }
+        //only the files whose contents differ between the CWD and the branch are written or deleted
+        Checkout.apply(filesCWD, filesInBranch);
 
         updateHead(c);
         saveBranch(c.getSha1ID(), branchName);
@@ -347,8 +343,7 @@ public class Repository {
 
 
     public static void branch(String newBranch) {
-        List<String> branches = Utils.plainFilenamesIn(BRANCHES);
-        if (branches.contains(newBranch)) {
+        if (Refs.exists(newBranch)) {
             System.out.println("A branch with that name already exists.");
             return;
         }
@@ -359,8 +354,7 @@ public class Repository {
     }
 
     public static void rmBranch(String branchName) {
-        List<String> branches = Utils.plainFilenamesIn(BRANCHES);
-        if (!branches.contains(branchName)) {
+        if (!Refs.exists(branchName)) {
             System.out.println("A branch with that name does not exist.");
             return;
         }
@@ -368,18 +362,12 @@ public class Repository {
             System.out.println("Cannot remove the current branch.");
             return;
         }
-        File file = Utils.join(BRANCHES, branchName);
-        file.delete(); //TODO: bug; throwing an illegal error
+        Refs.delete(branchName);
     }
 
-    //will contain the sha1ID of the specified commit
-    //in order to retrieve the specified branch, will need to read the contents of the file
+    //the branch will point to the sha1ID of the specified commit (see Refs)
     private static void saveBranch(String sha1ID, String branchName) {
-        File newBranch = new File(sha1ID);
-        File path = Utils.join(BRANCHES, branchName);
-
-        //Utils.writeObject(path, newBranch);
-        Utils.writeContents(path, sha1ID);
+        Refs.set(branchName, sha1ID);
     }
 
     private static Commit getSpecifiedBranch(String branchName) {
@@ -387,8 +375,7 @@ public class Repository {
     }
 
     private static Commit fromFileBranch(String fileIdentifier) {
-        File pathToCommit = Utils.join(BRANCHES, fileIdentifier); //path to commit
-        String sha1IDofCommit = Utils.readContentsAsString(pathToCommit);
+        String sha1IDofCommit = Refs.get(fileIdentifier);
         Commit c = Commit.fromFile(sha1IDofCommit);
         return c;
     }
@@ -396,13 +383,11 @@ public class Repository {
     //branch name only
     private static void setCurrentBranchName(String branchName) {
         //setting the current branch string variable to branchName
-        File currBranchPath = Utils.join(CURRENT_BRANCH, "current branch");
-        Utils.writeContents(currBranchPath, branchName);
+        Refs.setCurrent(branchName);
     }
 
     private static String getCurrentBranchName() {
-        File pathToBranch = Utils.join(CURRENT_BRANCH, "current branch");
-        currentBranch = Utils.readContentsAsString(pathToBranch);
+        currentBranch = Refs.current(); //read once per process
         return currentBranch;
     }
 
@@ -416,8 +401,8 @@ public class Repository {
      */
     public static void status() {
 
-        //printing branches first
-        List<String> branches = Utils.plainFilenamesIn(BRANCHES);
+        //printing branches first; packed-refs and the few loose refs, read once
+        List<String> branches = Refs.names();
         String currentBranch = getCurrentBranchName();
         printStatusHeader("Branches");
         printStatus("*" + currentBranch);
@@ -448,16 +433,51 @@ public class Repository {
         System.out.println();
 
         List<String> cwd = Utils.plainFilenamesIn(CWD);
-        HashMap<String, String> filesInCommit = readHead().getFilesInCommit();
         List<String> filesChanged = new LinkedList<>();
 
+        //only the files of the CWD that can be tracked are hashed: the staged ones, the ones the index
+        //already knows, and the ones the head tree holds (only the leaves of their buckets are read);
+        //any other file is untracked, listed by name and never read
+        String headTree = readHead().getTreeID();
+        List<String> toHash = new ArrayList<>();
+        List<String> unknown = new ArrayList<>();
+        for (String fileCWD : cwd) {
+            if (stagedFiles.containsKey(fileCWD) || Index.knows(fileCWD)) {
+                toHash.add(fileCWD);
+            } else {
+                unknown.add(fileCWD);
+            }
+        }
+        Set<String> tracked = Tree.holding(headTree, unknown);
+        Set<String> unhashed = new HashSet<>();
+        for (String fileCWD : unknown) {
+            if (tracked.contains(fileCWD)) {
+                toHash.add(fileCWD);
+            } else {
+                unhashed.add(fileCWD);
+            }
+        }
+
+        //hashing them in parallel (the index vouches for the unchanged ones), and comparing them with
+        //the head tree bucket by bucket: a bucket whose leaf would get the same id holds the same files
+        //with the same contents, so it is skipped and its leaf never read
+        Map<String, String> cwdSha1IDs = Scan.hashAll(toHash);
+        List<HashMap<String, String>> differing = Tree.differing(headTree, cwdSha1IDs);
+        HashMap<String, String> filesInCommit = differing.get(0); //the head's files in those buckets only
+        List<String> cwdDiffering = new ArrayList<>();
+        for (String fileCWD : cwd) {
+            if (differing.get(1).containsKey(fileCWD)) {
+                cwdDiffering.add(fileCWD);
+            }
+        }
+
         //CASE 1
         //comparing sha1ID of files in CWD and commit, if different add to filesChanged and have not been staged for addition
         //first filter
-        for (String fileCWD : cwd) {
+        for (String fileCWD : cwdDiffering) {
             if (filesInCommit.containsKey(fileCWD)) {
-                //get contents of file in CWD and compute sha1ID
-                String sha1IDCWD = Staging.computeCWDfileSHA1ID(fileCWD);
+                //sha1ID of the contents of the file in CWD
+                String sha1IDCWD = cwdSha1IDs.get(fileCWD);
                 if (!filesInCommit.get(fileCWD).equals(sha1IDCWD)) {
                     if (!stagedFiles.containsKey(fileCWD)) {
                         filesChanged.add(fileCWD + " (modified)");
@@ -469,7 +489,7 @@ public class Repository {
         //CASE 2 check all files in staged for addition to see if their contents in the CWD is the same, if not, add it tp filesChanged
         for (String staged : stagedFiles.keySet()) {
             if (cwd.contains(staged)) {
-                String sha1IDCWD = Staging.computeCWDfileSHA1ID(staged);
+                String sha1IDCWD = cwdSha1IDs.get(staged);
                 if (!stagedFiles.get(staged).equals(sha1IDCWD)) {
                     filesChanged.add(staged + " (modified)");
                 }
@@ -502,20 +522,15 @@ public class Repository {
         //printing untracked files
         //has to be in the CWD but not in the current commit nor staged files
 
-        //files staged to add - applying first filter
-        List<String> untracked = new LinkedList<>();
-        for (String c : cwd) {
-            if (!stagedFiles.containsKey(c)) {
-                if (!filesInCommit.containsKey(c)) {
-                    untracked.add(c);
-                }
-
-            }
-        }
+        //files staged to add - applying first filter; the unhashed files are untracked already
+        Set<String> untracked = new HashSet<>(Scan.untracked(cwdDiffering, filesInCommit, stagedFiles));
+        untracked.addAll(unhashed);
 
         printStatusHeader("Untracked Files");
-        for (String file : untracked) {
-            printStatus(file);
+        for (String file : cwd) {
+            if (untracked.contains(file)) {
+                printStatus(file);
+            }
         }
         System.out.println();
 
@@ -530,54 +545,78 @@ public class Repository {
 
     }
 
-    public static void globalLog() {
-        List<String> filesInCommit = Utils.plainFilenamesIn(Commit.COMMITS);
-        for (String s : filesInCommit) {
-            Commit c = Commit.fromFile(s);
-            logPrinter(c);
+    /**
+     * prints every commit ever made, streamed from the commit journal
+     * @param newestFirst read the journal backwards
+     * @param limit how many commits to print at most, -1 for all of them
+     */
+    public static void globalLog(boolean newestFirst, int limit) {
+        int[] left = {limit};
+        CommitJournal.Visitor printer = e -> {
+            if (left[0] == 0) {
+                return false;
+            }
+            left[0] -= 1;
+            logPrinter(e.id, e.timeStamp, e.message);
+            return true;
+        };
+        if (newestFirst) {
+            CommitJournal.backward(printer);
+        } else {
+            CommitJournal.forward(printer);
         }
     }
 
     public static void find(String message) {
-        Hash msgHash = readHashMessages();
-        messagesToCommits = msgHash.getMsgToCommits();
-        if (!messagesToCommits.containsKey(message)) {
-            System.out.println("Found no commit with that message.");
-            return;
-        }
-        LinkedList<String> commitIDS = messagesToCommits.get(message);
-        for (String commitID : commitIDS) {
-            System.out.println(commitID);
-        }
+        printFound(Messages.find(message));
     }
 
-    private static Hash readHashMessages() {
-        return Hash.fromFileHashMessages();
+    /** find --contains: the commits whose message contains TEXT */
+    public static void findContaining(String text) {
+        printFound(Messages.containing(text));
     }
 
-    private static void putMessageAndCommit(String message, String sha1ID, HashMap<String, LinkedList<String>> messagesToCommits) {
-        if (messagesToCommits.containsKey(message)) {
-            LinkedList<String> commitIDS = messagesToCommits.get(message);
-            commitIDS.add(sha1ID);
+    /** find --regex: the commits with a message REGEX matches somewhere in */
+    public static void findMatching(String regex) {
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException excp) {
+            System.out.println("Invalid pattern.");
             return;
         }
-        LinkedList<String> newCommitsID = new LinkedList<>();
-        newCommitsID.add(sha1ID);
-        messagesToCommits.put(message, newCommitsID);
-        return;
+        printFound(Messages.matching(pattern));
     }
 
-    private static void saveMessagesToCommit(Hash hash) {
-        Hash.saveHashMessages(hash);
+    private static void printFound(List<String> commitIDS) {
+        if (commitIDS.isEmpty()) {
+            System.out.println("Found no commit with that message.");
+            return;
+        }
+        for (String commitID : commitIDS) {
+            System.out.println(commitID);
+        }
     }
 
+    //HEAD holds the sha1ID of the current commit
     private static void updateHead(Commit currCommit) {
         File f = Utils.join(Commit.COMMITS, "HEAD");
-        Utils.writeObject(f, currCommit);
+        Transaction.write(f, currCommit.getSha1ID());
+        Cache.put(Cache.REF, "HEAD", currCommit.getSha1ID(), 100);
     }
 
     public static Commit readHead() {
-        Commit c = Commit.fromFile("HEAD");
+        String sha1ID = Cache.get(Cache.REF, "HEAD", String.class);
+        if (sha1ID == null) {
+            File f = Utils.join(Commit.COMMITS, "HEAD");
+            sha1ID = Transaction.readString(f);
+            if (!ObjectStore.isId(sha1ID)) {
+                //older repositories kept a whole copy of the commit in HEAD; it is always the current branch's commit
+                return fromFileBranch(getCurrentBranchName());
+            }
+            Cache.put(Cache.REF, "HEAD", sha1ID, 100);
+        }
+        Commit c = Commit.fromFile(sha1ID);
         return c;
     }
 
@@ -590,28 +629,35 @@ public class Repository {
         Staging.toRemove(file);
     }
 
-    public static void log() {
+    public static void log(boolean abbreviate) {
         /**
          * HEAD points at the current commit, I need to get the actual object print its metadata
          * and get its parent's commit and so on until parentID is NULL
          */
 
         Commit headCommit = readHead();
-        logPrinter(headCommit);
-        while (headCommit.getParentID() != null) {
-            Commit c = Commit.fromFile(headCommit.getParentID());
-            logPrinter(c);
-            headCommit = c;
+        logPrinter(headCommit, abbreviate);
+        //following first parents through the commit graph; only the commits printed get read
+        String parentID = CommitGraph.node(headCommit.getSha1ID()).firstParent;
+        while (parentID != null) {
+            logPrinter(Commit.header(parentID), abbreviate);
+            parentID = CommitGraph.node(parentID).firstParent;
         }
     }
 
-    private static void logPrinter(Commit c) {
+    /** prints C, with the shortest prefix of its id no other commit shares if ABBREVIATE */
+    private static void logPrinter(Commit c, boolean abbreviate) {
+        String id = abbreviate ? CommitGraph.abbrev(c.getSha1ID(), ABBREV_MIN) : c.getSha1ID();
+        logPrinter(id, c.getTimeStamp(), c.getMessage());
+    }
+
+    private static void logPrinter(String sha1ID, Date timeStamp, String message) {
 
-        String[] s = c.getTimeStamp().toString().split(" ");
+        String[] s = timeStamp.toString().split(" ");
         System.out.println("===");
-        System.out.println("commit " + c.getSha1ID());
+        System.out.println("commit " + sha1ID);
         System.out.println("Date: " + s[0] + " " + s[1] + " " + s[2] + " " +  s[3] + " " + s[5] + " -0800");
-        System.out.println(c.getMessage());
+        System.out.println(message);
         System.out.println();
 
     }
@@ -638,10 +684,9 @@ public class Repository {
     }
 
     public static void reset(String sha1IDCommit) {
-        //no commit with that id
-        List<String> commitsIDS = Utils.plainFilenamesIn(Commit.COMMITS);
-        if (!commitsIDS.contains(sha1IDCommit)) {
-            System.out.println("No commit with that id exists.");
+        //no commit with that id (or an abbreviation of more than one)
+        sha1IDCommit = resolveCommit(sha1IDCommit);
+        if (sha1IDCommit == null) {
             return;
         }
 
@@ -651,24 +696,13 @@ public class Repository {
 
         HashMap<String, String> headCommitFiles = readHead().getFilesInCommit();
         HashMap<String, String> stagedFiles = Hash.fromFileHash().getStagedFiles();
-        for (String file : cwdFiles) {
-            if (!headCommitFiles.containsKey(file)) {
-                if (!stagedFiles.containsKey(file)) {
-                    System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                    return;
-                }
-            }
-        }
-
-        //remove files from cwd
-        for (String fileCwd : cwdFiles) {
-            File path = Utils.join(CWD, fileCwd);
-            Utils.restrictedDelete(path);
+        if (!Scan.untracked(cwdFiles, headCommitFiles, stagedFiles).isEmpty()) {
+            System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
+            return;
         }
 
-        for (String file :filesRequested.keySet()) {
-            writeContentsCWD(filesRequested.get(file), file);
-        }
+        //files of the cwd the commit doesn't have are removed, the rest rewritten only if they differ
+        Checkout.apply(cwdFiles, filesRequested);
 
         for (String s : stagedFiles.keySet()) {
             if (!filesRequested.containsKey(s)) {
@@ -687,32 +721,13 @@ public class Repository {
         Staging.clearStagingArea();
     }
 
-    private static void writeContentsCWD(String fileSha1ID, String fileName) {
-
-        File path = Utils.join(Staging.BLOBS, fileSha1ID);
-        String conts = Utils.readContentsAsString(path);
-        File pathCWD = Utils.join(CWD, fileName);
-
-        Utils.writeObject(pathCWD, fileName);
-        Utils.writeContents(pathCWD, conts);
-
-    }
-
     private static void substituteFileContents(String replacementSHA1ID, String file) {
-
-        //find the file and read contents
-        File pathCWD = Utils.join(CWD, file);
-        File path = Utils.join(Staging.BLOBS, replacementSHA1ID);
-        String conts = Utils.readContentsAsString(path);
-
-        Utils.writeObject(pathCWD, file);
-        Utils.writeContents(pathCWD, conts);
+        Checkout.write(replacementSHA1ID, file);
     }
 
     public static void checkoutCommitAndFile(String commitID, String file) {
-        List<String> commitIDS = Utils.plainFilenamesIn(Commit.COMMITS);
-        if (!commitIDS.contains(commitID)) {
-            System.out.println("No commit with that id exists.");
+        commitID = resolveCommit(commitID);
+        if (commitID == null) {
             return;
         }
 
@@ -728,8 +743,65 @@ public class Repository {
 
     }
 
-    public static void add(String fileName) {
-        Staging.stageForAddition(fileName);
+    /**
+     * returns the full id of the commit ID names, ID itself or the one commit it is an abbreviation of
+     * (found by binary search in the commit-graph); null, after saying why, if there is none or several
+     */
+    private static String resolveCommit(String id) {
+        if (ObjectStore.isId(id) && ObjectStore.contains(Commit.COMMITS, id)) {
+            return id;
+        }
+        List<String> matches = CommitGraph.matching(id, AMBIGUOUS_SHOWN + 1);
+        if (matches.isEmpty()) {
+            System.out.println("No commit with that id exists.");
+            return null;
+        }
+        if (matches.size() > 1) {
+            List<String> shown = new ArrayList<>();
+            for (String match : matches.subList(0, Math.min(AMBIGUOUS_SHOWN, matches.size()))) {
+                shown.add(CommitGraph.abbrev(match, id.length() + 1));
+            }
+            System.out.println("Commit id " + id + " is ambiguous; it could be " + String.join(", ", shown)
+                    + (matches.size() > AMBIGUOUS_SHOWN ? " or more." : "."));
+            return null;
+        }
+        return matches.get(0);
+    }
+
+    public static void add(List<String> paths) {
+        Staging.stageForAddition(paths);
+    }
+
+    /**
+     * rewrites a repository made by an older gitlet in the current formats:
+     * java serialized commits get the binary encoding (keeping their sha1IDs),
+     * the staging area is re-encoded, the messages go in the journal, HEAD is made to hold an id,
+     * and loose objects (commits, trees, blobs and the chunks of big files) move into their fan-out folders
+     */
+    public static void migrate() {
+        for (String sha1ID : ObjectStore.list(Commit.COMMITS)) {
+            Commit.migrate(sha1ID);
+        }
+        ObjectStore.fanOut(Commit.COMMITS);
+        ObjectStore.fanOut(Tree.TREES);
+        ObjectStore.fanOut(Staging.BLOBS);
+        ObjectStore.fanOut(Chunker.CHUNKS);
+        Hash.saveStagedFiles(Hash.fromFileHash());
+        Messages.create();
+        updateHead(readHead());
+    }
+
+    /**
+     * folds the loose commits and blobs into packs, and the loose refs into packed-refs, so the
+     * object directories stay small no matter how many versions the repository holds
+     */
+    public static void repack() {
+        Pack.repack(Commit.COMMITS);
+        Pack.repack(Tree.TREES);
+        Pack.repack(Staging.BLOBS);
+        Pack.repack(Chunker.CHUNKS);
+        CommitGraph.compact();
+        Refs.pack();
     }
 
 
@@ -0,0 +1,182 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/** Scans the working directory on a fork-join pool.
+ *  Files that need hashing are split in halves until each task holds a
+ *  single file, hashed (through the Index) on whichever worker picks it up,
+ *  and the halves' results are merged on the way back up.  Files being
+ *  added are also saved as blobs on the worker that hashed them.  The number of
+ *  workers is the "parallelism" setting (see Config), by default one per
+ *  core; a parallelism of 1 scans on the calling thread.
+ *
+ *  @author Ruth Frausto
+ */
+class Scan {
+
+    /** Below this many names, filtering for untracked files isn't worth forking. */
+    private static final int FILTER_THRESHOLD = 1024;
+
+    private static ForkJoinPool pool;
+
+    /** Returns the sha1ID of every file of FILES in the CWD, hashed in parallel. */
+    static Map<String, String> hashAll(List<String> files) {
+        if (files.isEmpty()) {
+            return new HashMap<>();
+        }
+        HashTask task = new HashTask(files, 0, files.size(), null);
+        if (parallelism() == 1) {
+            return task.compute();
+        }
+        return pool().invoke(task);
+    }
+
+    /**
+     * saves every file of FILES in the CWD as a blob, in parallel, and returns their sha1IDs;
+     * a file is tried as a delta against its version in BASES (see Delta)
+     */
+    static Map<String, String> storeAll(List<String> files, Map<String, String> bases) {
+        if (files.isEmpty()) {
+            return new HashMap<>();
+        }
+        HashTask task = new HashTask(files, 0, files.size(), bases);
+        if (parallelism() == 1) {
+            return task.compute();
+        }
+        return pool().invoke(task);
+    }
+
+    /**
+     * returns the files of CWDFILES that are neither tracked by the current commit
+     * (COMMITTED) nor staged for addition (STAGED), in CWD order
+     */
+    static List<String> untracked(List<String> cwdFiles, Map<String, String> committed,
+                                  Map<String, String> staged) {
+        UntrackedTask task = new UntrackedTask(cwdFiles, 0, cwdFiles.size(), committed, staged);
+        if (parallelism() == 1 || cwdFiles.size() < FILTER_THRESHOLD) {
+            return task.compute();
+        }
+        return pool().invoke(task);
+    }
+
+    /**
+     * starts WORK on the pool, or runs it right away with a parallelism of 1;
+     * join() the task returned for its result
+     */
+    static <T> ForkJoinTask<T> fork(Callable<T> work) {
+        ForkJoinTask<T> task = ForkJoinTask.adapt(work);
+        if (parallelism() == 1) {
+            task.invoke();
+        } else if (ForkJoinTask.inForkJoinPool()) {
+            task.fork(); //already on a worker, e.g. a file being added by storeAll
+        } else {
+            pool().execute(task);
+        }
+        return task;
+    }
+
+    static int parallelism() {
+        int n = Config.getInt("parallelism", Runtime.getRuntime().availableProcessors());
+        if (n < 1) {
+            throw Utils.error("Setting parallelism must be at least 1.");
+        }
+        return n;
+    }
+
+    private static synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism());
+        }
+        return pool;
+    }
+
+    /** Hashes FILES[LO, HI), and saves them as blobs unless BASES is null. */
+    private static class HashTask extends RecursiveTask<Map<String, String>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> files;
+        private final int lo;
+        private final int hi;
+        private final Map<String, String> bases;
+
+        HashTask(List<String> files, int lo, int hi, Map<String, String> bases) {
+            this.files = files;
+            this.lo = lo;
+            this.hi = hi;
+            this.bases = bases;
+        }
+
+        @Override
+        protected Map<String, String> compute() {
+            if (hi - lo == 1) {
+                Map<String, String> result = new HashMap<>();
+                String file = files.get(lo);
+                result.put(file, bases == null ? Index.sha1(file) : store(file));
+                return result;
+            }
+            int mid = (lo + hi) >>> 1;
+            HashTask left = new HashTask(files, lo, mid, bases);
+            left.fork();
+            Map<String, String> result = new HashTask(files, mid, hi, bases).compute();
+            result.putAll(left.join());
+            return result;
+        }
+
+        /** Saves FILE as a blob, unless the index vouches for a blob already saved. */
+        private String store(String file) {
+            String sha1ID = Index.lookup(file);
+            if (sha1ID == null || !ObjectStore.contains(Staging.BLOBS, sha1ID)) {
+                //hashing and saving the blob in one pass, so the file is only read once
+                sha1ID = Index.hash(file, f -> Delta.store(f, Staging.BLOBS, bases.get(file)));
+            }
+            return sha1ID;
+        }
+    }
+
+    /** Filters the untracked files out of FILES[LO, HI). */
+    private static class UntrackedTask extends RecursiveTask<List<String>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> files;
+        private final int lo;
+        private final int hi;
+        private final Map<String, String> committed;
+        private final Map<String, String> staged;
+
+        UntrackedTask(List<String> files, int lo, int hi,
+                      Map<String, String> committed, Map<String, String> staged) {
+            this.files = files;
+            this.lo = lo;
+            this.hi = hi;
+            this.committed = committed;
+            this.staged = staged;
+        }
+
+        @Override
+        protected List<String> compute() {
+            if (hi - lo <= FILTER_THRESHOLD) {
+                List<String> result = new ArrayList<>();
+                for (String file : files.subList(lo, hi)) {
+                    if (!committed.containsKey(file) && !staged.containsKey(file)) {
+                        result.add(file);
+                    }
+                }
+                return result;
+            }
+            int mid = (lo + hi) >>> 1;
+            UntrackedTask left = new UntrackedTask(files, lo, mid, committed, staged);
+            left.fork();
+            List<String> right = new UntrackedTask(files, mid, hi, committed, staged).compute();
+            List<String> result = left.join();
+            result.addAll(right);
+            return result;
+        }
+    }
+}
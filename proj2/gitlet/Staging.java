@@ -2,6 +2,10 @@ package gitlet;
 
 import java.io.File;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.HashMap;
 
@@ -14,31 +18,62 @@ public class Staging implements Serializable {
     static final File BLOBS = Utils.join(Repository.GITLET_DIR, "blobs");
 
 
-    public static void stageForAddition(String fileName) {
+    /**
+     * stages every file PATHS names: a file of the CWD, "." for all of them, or a glob
+     * pattern such as *.txt.  HEAD and the staging area are read once, the files are
+     * hashed and saved as blobs in parallel (see Scan), and the staging area is written once
+     */
+    public static void stageForAddition(List<String> paths) {
 
         List<String> filesInCWD = Utils.plainFilenamesIn(Repository.CWD); //files in the CWD
-         if (!filesInCWD.contains(fileName)) {
-             System.out.println("File does not exist.");
-             return;
-         }
+        LinkedHashSet<String> fileNames = new LinkedHashSet<>();
+        for (String path : paths) {
+            List<String> matched = matching(path, filesInCWD);
+            if (matched.isEmpty()) {
+                System.out.println("File does not exist.");
+                return;
+            }
+            fileNames.addAll(matched);
+        }
 
         Commit currCommit = Repository.readHead(); //getting the current commit (HEAD)
         HashMap<String,String> filesCommitted = currCommit.getFilesInCommit(); //files in the current commit
-        File fileCWD = getFileFromCWD(fileName); //path to file in CWD
-        String s = Utils.readContentsAsString(fileCWD); //actual contents
-        String fileSha1ID = computeCWDfileSHA1ID(fileName); //sha1ID of file in CWD
         Hash h = readHash(); //same as Hash.fromFileHash
         HashMap<String, String> stagedFiles = h.getStagedFiles();
         List<String> stagedForRemoval = h.getStagedForRemoval();
 
+        //the version staged or committed before is the base a delta is tried against
+        HashMap<String, String> bases = new HashMap<>();
+        for (String fileName : fileNames) {
+            String baseID = stagedFiles.containsKey(fileName) ? stagedFiles.get(fileName) : filesCommitted.get(fileName);
+            if (baseID != null) {
+                bases.put(fileName, baseID);
+            }
+        }
+        Map<String, String> sha1IDs = Scan.storeAll(new ArrayList<>(fileNames), bases);
+
+        boolean changed = false;
+        for (String fileName : fileNames) {
+            changed |= stage(fileName, sha1IDs.get(fileName), filesCommitted, stagedFiles, stagedForRemoval);
+        }
+        if (changed) {
+            Hash.saveStagedFiles(h);
+        }
+    }
+
+    /**
+     * stages FILENAME, whose contents are the blob FILESHA1ID, in the staging area in memory
+     * @return true if the staging area changed
+     */
+    private static boolean stage(String fileName, String fileSha1ID, HashMap<String, String> filesCommitted,
+                                 HashMap<String, String> stagedFiles, List<String> stagedForRemoval) {
         /**
          * restores former contents.  Should simply "unremove" the file without staging.
          */
 
         if (stagedForRemoval.contains(fileName)) {
             stagedForRemoval.remove(fileName);
-            Hash.saveStagedFiles((Hash) h);
-            return;
+            return true;
         }
 
 
@@ -49,11 +84,9 @@ public class Staging implements Serializable {
             if (fileSha1IDCommit.equals(fileSha1ID)) {
                 if (stagedFiles.containsKey(fileName)) {
                     stagedFiles.remove(fileName);
-                    Hash.saveStagedFiles((Hash) h);
-                    saveBlob(fileSha1ID, fileName, s); //writing the file into blobs
-                    return;
+                    return true;
                 }
-                return;
+                return false;
             }
         }
 
@@ -63,7 +96,7 @@ public class Staging implements Serializable {
             if (!stagedFiles.get(fileName).equals(fileSha1ID)) { //if contents are different, replace
                 stagedFiles.replace(fileName, fileSha1ID);
             } else {
-                return;
+                return false;
             }
         } else {
             stagedFiles.put(fileName, fileSha1ID); //file was not found, add it
@@ -74,8 +107,25 @@ public class Staging implements Serializable {
          * compare the sha1ID of the file in the staging area and the file to be added to the staging area
          * to see if it needs to be updated, o/w return (file has not changed its contents)
          */
-        Hash.saveStagedFiles((Hash) h);
-        saveBlob(fileSha1ID, fileName, s); //writing the file into blobs
+        return true;
+    }
+
+    /** The files of FILESINCWD that PATH names: itself, all of them for ".", or those matching a glob. */
+    private static List<String> matching(String path, List<String> filesInCWD) {
+        if (path.equals(".")) {
+            return filesInCWD;
+        }
+        if (!path.matches(".*[*?\\[{].*")) {
+            return filesInCWD.contains(path) ? List.of(path) : List.of();
+        }
+        PathMatcher glob = FileSystems.getDefault().getPathMatcher("glob:" + path);
+        List<String> matched = new ArrayList<>();
+        for (String fileName : filesInCWD) {
+            if (glob.matches(Paths.get(fileName))) {
+                matched.add(fileName);
+            }
+        }
+        return matched;
     }
 
 
@@ -85,12 +135,8 @@ public class Staging implements Serializable {
      * @param
      */
     public static void saveBlob(String sha1ID, String fileName, String contents) {
-
-        File s = new File(sha1ID);
-        File path = Utils.join(BLOBS, sha1ID); //creating a new file in blobs that contain its sha1ID as the path
-
-        Utils.writeObject(path, s);
-        Utils.writeContents(path, contents);
+        //saved in blobs under its sha1ID, unless it is already there (loose or packed)
+        ObjectStore.write(BLOBS, sha1ID, contents.getBytes(StandardCharsets.UTF_8));
 
     }
 
@@ -127,6 +173,7 @@ public class Staging implements Serializable {
             filesToRemove.add(file);
             if (filesCWD.contains(file)) {
                 Utils.restrictedDelete(path);
+                Index.forget(file);
             }
         }
 
@@ -155,13 +202,12 @@ public class Staging implements Serializable {
     }
 
     /**
-     * reading contents of a file from the BLOBS directory
+     * reading contents of a file from the BLOBS directory (loose or packed)
      * @param fileIdentifier
      * @return
      */
     public static byte[] fromFileBlob(String fileIdentifier) {
-        File f = Utils.join(BLOBS, fileIdentifier);
-        byte[] c = Utils.readContents(f);
+        byte[] c = ObjectStore.read(BLOBS, fileIdentifier);
         return c;
     }
 
@@ -182,8 +228,8 @@ public class Staging implements Serializable {
     }
 
     public static String computeCWDfileSHA1ID(String fileName) {
-        byte[] contents = fromFileCWD(fileName); //reading the contents of the file as a byte array to compute its sha1ID
-        return getFileSha1ID(contents);
+        //only rehashed (streaming) if the stat cache can't vouch for the file
+        return Index.sha1(fileName);
     }
 
     public static Hash readHash() {
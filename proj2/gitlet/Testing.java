@@ -1,5 +1,478 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** Round-trip and crash-recovery checks of the files gitlet keeps in
+ *  .gitlet: packs, deltas, encoded commits, the journals, the commit-graph
+ *  tail, transaction records and the index.  Run it from an empty scratch directory,
+ *      java gitlet.Testing
+ *  it makes a repository there, prints each check that fails, and removes
+ *  the repository when done.  It exits with 1 if any check failed.
+ *
+ *  @author Ruth Frausto
+ */
 public class Testing {
 
+    private static int checks;
+    private static int failures;
+
+    public static void main(String[] args) {
+        if (Repository.GITLET_DIR.exists()) {
+            System.out.println("Run the checks in an empty directory.");
+            return;
+        }
+        Repository.initCommand();
+        try {
+            packRoundTrip();
+            interruptedRepack();
+            deltaRoundTrip();
+            deltaLimits();
+            codecRoundTrip();
+            commitRoundTrip();
+            commitJournal();
+            commitGraphTail();
+            messageJournal();
+            transactionRecovery();
+            transactionLevels();
+            indexStat();
+        } finally {
+            deleteAll(Repository.GITLET_DIR);
+        }
+        System.out.println(checks + " checks, " + failures + " failed.");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /** objects read back the same after repack folds them into a pack, and the loose copies are gone */
+    private static void packRoundTrip() {
+        File dir = objectDir("pack-round-trip");
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 300; i += 1) {
+            byte[] contents = ("object " + i).getBytes(StandardCharsets.UTF_8);
+            String id = Utils.sha1(contents);
+            ObjectStore.write(dir, id, contents);
+            ids.add(id);
+        }
+        Pack.repack(dir);
+        check(ObjectStore.looseIds(dir).isEmpty(), "repack leaves no loose objects");
+        check(Pack.packsIn(dir).size() == 1, "repack makes one pack");
+        for (int i = 0; i < ids.size(); i += 1) {
+            byte[] read = ObjectStore.read(dir, ids.get(i));
+            check(Arrays.equals(read, ("object " + i).getBytes(StandardCharsets.UTF_8)),
+                    "packed object " + i + " reads back");
+        }
+        List<String> sorted = new ArrayList<>(ids);
+        sorted.sort(null);
+        check(Pack.packsIn(dir).get(0).ids().equals(sorted), "pack index lists every id, sorted");
+        check(!ObjectStore.contains(dir, Utils.sha1("not stored")), "pack doesn't find an object it lacks");
+
+        File fds = new File("/proc/self/fd"); //linux only; elsewhere the count is skipped
+        int before = fds.isDirectory() ? fds.list().length : 0;
+        for (int i = 0; i < 20; i += 1) {
+            byte[] contents = ("later object " + i).getBytes(StandardCharsets.UTF_8);
+            ObjectStore.write(dir, Utils.sha1(contents), contents);
+            Pack.repack(dir);
+            check(Arrays.equals(ObjectStore.read(dir, ids.get(0)), "object 0".getBytes(StandardCharsets.UTF_8))
+                    && Arrays.equals(ObjectStore.read(dir, Utils.sha1(contents)), contents),
+                    "objects read back after repack " + (i + 2));
+        }
+        int after = fds.isDirectory() ? fds.list().length : 0;
+        check(after - before < 20, "repack closes the packs it drops (" + before + " -> " + after + " files open)");
+    }
+
+    /** a pack without its index (repack stopped before renaming it into place) is ignored */
+    private static void interruptedRepack() {
+        File dir = objectDir("interrupted-repack");
+        byte[] contents = "loose".getBytes(StandardCharsets.UTF_8);
+        String id = Utils.sha1(contents);
+        ObjectStore.write(dir, id, contents);
+        File packDir = Utils.join(dir, Pack.PACK_DIR);
+        packDir.mkdir();
+        Utils.writeContents(Utils.join(packDir, "pack-x.pack"), "PACK");
+        Utils.writeContents(Utils.join(packDir, "pack-x-1.tmp"), "partial index");
+        check(Pack.packsIn(dir).isEmpty(), "a pack with no index isn't opened");
+        check(Arrays.equals(ObjectStore.read(dir, id), contents), "loose object survives an interrupted repack");
+    }
+
+    /** Delta.apply rebuilds a target from its base, and stored chains of deltas read back */
+    private static void deltaRoundTrip() {
+        Random random = new Random(9);
+        byte[] base = new byte[50000];
+        random.nextBytes(base);
+        byte[] target = Arrays.copyOf(base, base.length + 100);
+        target[10] ^= 1;
+        System.arraycopy(base, 20000, target, 30000, 5000);
+        byte[] delta = Delta.create(base, target);
+        check(delta.length < target.length / 10, "a small edit makes a small delta");
+        check(Arrays.equals(Delta.apply(base, delta), target), "delta applies back to the target");
+        check(Arrays.equals(Delta.apply(base, Delta.create(base, new byte[0])), new byte[0]),
+                "delta to an empty target");
+
+        File dir = objectDir("delta-round-trip");
+        File file = Utils.join(Repository.GITLET_DIR, "test-version");
+        String previous = null;
+        List<byte[]> versions = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        byte[] contents = base;
+        for (int i = 0; i < 15; i += 1) {
+            contents = Arrays.copyOf(contents, contents.length + 10);
+            contents[random.nextInt(contents.length)] ^= 1;
+            Utils.writeContents(file, (Object) contents);
+            previous = Delta.store(file, dir, previous);
+            versions.add(contents);
+            ids.add(previous);
+        }
+        check(ObjectStore.depth(dir, ids.get(1)) == 1, "the second version is a delta");
+        check(ObjectStore.depth(dir, ids.get(ids.size() - 1)) <= 10, "chains stop at delta.maxDepth");
+        Pack.repack(dir);
+        for (int i = 0; i < ids.size(); i += 1) {
+            check(Arrays.equals(ObjectStore.read(dir, ids.get(i)), versions.get(i)), "version " + i + " reads back");
+        }
+        file.delete();
+    }
+
+    /** delta chains never outgrow the one byte their depth is kept in, and chunked files are never bases */
+    private static void deltaLimits() {
+        File dir = objectDir("delta-limits");
+        File file = Utils.join(Repository.GITLET_DIR, "test-version");
+        System.setProperty("gitlet.delta.maxDepth", "1000");
+        String previous = null;
+        int deepest = 0;
+        boolean wrapped = false;
+        for (int i = 0; i < 300; i += 1) {
+            Utils.writeContents(file, "line " + "x".repeat(200) + i);
+            previous = Delta.store(file, dir, previous);
+            int depth = ObjectStore.depth(dir, previous);
+            deepest = Math.max(deepest, depth);
+            wrapped |= depth == 0 && ObjectStore.encoding(dir, previous) == ObjectStore.DELTA;
+        }
+        System.clearProperty("gitlet.delta.maxDepth");
+        check(deepest == ObjectStore.MAX_DEPTH && !wrapped, "delta.maxDepth above 255 stops chains at 255");
+        check(Utils.readContentsAsString(file).equals(new String(ObjectStore.read(dir, previous),
+                StandardCharsets.UTF_8)), "the deepest version reads back");
+
+        byte[] large = new byte[4096];
+        new Random(3).nextBytes(large);
+        Utils.writeContents(file, (Object) large);
+        System.setProperty("gitlet.chunk.threshold", "1024");
+        System.setProperty("gitlet.chunk.averageSize", "256");
+        String chunked = Delta.store(file, dir, null);
+        System.clearProperty("gitlet.chunk.threshold");
+        System.clearProperty("gitlet.chunk.averageSize");
+        large[0] ^= 1;
+        Utils.writeContents(file, (Object) large);
+        String next = Delta.store(file, dir, chunked);
+        check(ObjectStore.encoding(dir, chunked) == ObjectStore.CHUNKED, "a file over chunk.threshold is chunked");
+        check(ObjectStore.depth(dir, next) == 0, "a chunked version isn't used as a delta base");
+        check(Arrays.equals(ObjectStore.read(dir, next), large), "the version after a chunked one reads back");
+        file.delete();
+    }
+
+    /** values written by Codec.Writer read back the same, from a buffer or a stream */
+    private static void codecRoundTrip() {
+        String id = Utils.sha1("some object");
+        byte[] encoded = new Codec.Writer(0x54455354, 3).putByte(7).putInt(-5).putLong(1L << 40)
+                .putString("").putString("caf\u00e9 \ud83d\ude00").putId(id).toBytes();
+        ByteBuffer in = Codec.open(encoded, 0x54455354, 3);
+        check(in != null, "an encoding opens with its own signature");
+        check(in.get() == 7 && in.getInt() == -5 && in.getLong() == 1L << 40, "numbers read back");
+        check(Codec.getString(in).isEmpty(), "the empty string reads back");
+        check(Codec.getString(in).equals("caf\u00e9 \ud83d\ude00"), "non-ASCII strings read back");
+        check(Codec.getId(in).equals(id) && !in.hasRemaining(), "ids read back, and nothing is left over");
+        check(Codec.open(encoded, 0x4f544852, 3) == null, "another signature is taken for an older format");
+        try {
+            Codec.open(encoded, 0x54455354, 4);
+            check(false, "an unknown version is refused");
+        } catch (GitletException excp) {
+            check(true, "an unknown version is refused");
+        }
+        try {
+            PushbackInputStream stream = new PushbackInputStream(new ByteArrayInputStream(encoded), 5);
+            check(Codec.open(stream, 0x4f544852, 3) == null && stream.readAllBytes().length == encoded.length,
+                    "a stream of another signature is left unread");
+            stream = new PushbackInputStream(new ByteArrayInputStream(encoded), 5);
+            DataInputStream data = Codec.open(stream, 0x54455354, 3);
+            check(data.readByte() == 7 && data.readInt() == -5 && data.readLong() == 1L << 40
+                    && Codec.readString(data).isEmpty(), "a stream reads back the same");
+            check(Codec.readString(data).equals("caf\u00e9 \ud83d\ude00") && Codec.readId(data).equals(id),
+                    "a stream reads strings and ids back");
+        } catch (IOException excp) {
+            check(false, "streams read back: " + excp.getMessage());
+        }
+    }
+
+    /** commits are saved and read back whole, or header only, with the same sha1ID */
+    private static void commitRoundTrip() {
+        Commit initial = Repository.readHead();
+        HashMap<String, String> files = new HashMap<>();
+        files.put("a.txt", Utils.sha1("a"));
+        files.put("b \u00e9.txt", Utils.sha1("b"));
+        Commit child = new Commit("child", initial.getSha1ID(), files, new LinkedList<>());
+        Commit.saveCommit(child);
+        Commit merge = new Commit("Merged x into \u00e9.", child.getSha1ID(), initial.getSha1ID(),
+                new HashMap<>(), new LinkedList<>(Collections.singletonList("a.txt")));
+        Commit.saveCommit(merge);
+        for (Commit c : Arrays.asList(initial, child, merge)) {
+            Cache.invalidate(Cache.COMMIT, c.getSha1ID());
+            Commit header = Commit.header(c.getSha1ID());
+            check(header.getMessage().equals(c.getMessage()) && header.getParents().equals(c.getParents())
+                    && header.getTimeStamp().equals(c.getTimeStamp()), "commit header reads back: " + c.getMessage());
+            Cache.invalidate(Cache.COMMIT, c.getSha1ID());
+            Commit read = Commit.fromFile(c.getSha1ID());
+            check(read.getTreeID().equals(c.getTreeID())
+                    && read.getFilesInCommit().equals(c.getFilesInCommit()), "commit files read back: " + c.getMessage());
+            check(read.verify() && Utils.sha1(read.encode()).equals(c.getSha1ID()),
+                    "commit encoding hashes to its id: " + c.getMessage());
+        }
+        HashMap<String, String> left = new HashMap<>(files);
+        left.remove("a.txt");
+        check(merge.getFilesInCommit().equals(left), "a merge commit drops its removed files");
+    }
+
+    /** the commit journal reads the same forwards and backwards, and a torn last record is dropped */
+    private static void commitJournal() {
+        List<String> ids = new ArrayList<>();
+        CommitJournal.forward(e -> ids.add(e.id));
+        String parent = Repository.readHead().getSha1ID();
+        for (int i = 0; i < 200; i += 1) {
+            //long messages, so backward() has to read more than one block
+            Commit c = new Commit("journal " + i + " " + "m".repeat(500), parent, new HashMap<>(), new LinkedList<>());
+            Commit.saveCommit(c);
+            CommitJournal.add(c);
+            ids.add(c.getSha1ID());
+            parent = c.getSha1ID();
+        }
+        check(journalForward().equals(ids), "the journal reads forwards in commit order");
+        check(journalBackward().equals(reversed(ids)), "the journal reads backwards newest first");
+
+        Commit torn = new Commit("torn", parent, new HashMap<>(), new LinkedList<>());
+        Commit.saveCommit(torn);
+        CommitJournal.add(torn);
+        truncate(CommitJournal.JOURNAL, CommitJournal.JOURNAL.length() - 7);
+        check(journalForward().equals(ids), "a torn last record isn't read forwards");
+        check(journalBackward().equals(reversed(ids)), "a torn last record isn't read backwards");
+
+        Commit next = new Commit("after the tear", parent, new HashMap<>(), new LinkedList<>());
+        Commit.saveCommit(next);
+        CommitJournal.add(next);
+        ids.add(next.getSha1ID());
+        check(journalForward().equals(ids), "a torn record is cut before the next one is added");
+        check(journalBackward().equals(reversed(ids)), "records added after a tear read backwards");
+        List<String> newest = new ArrayList<>();
+        CommitJournal.backward(e -> newest.add(e.message) && newest.size() < 2);
+        check(newest.equals(Arrays.asList("after the tear", "journal 199 " + "m".repeat(500))),
+                "a visitor stops the backward read");
+    }
+
+    /** a torn last record of the commit-graph tail is cut off, so the records after it stay aligned */
+    private static void commitGraphTail() {
+        String parent = Repository.readHead().getSha1ID();
+        Commit torn = new Commit("graph torn", parent, new HashMap<>(), new LinkedList<>());
+        Commit.saveCommit(torn);
+        CommitGraph.add(torn);
+        truncate(CommitGraph.TAIL, CommitGraph.TAIL.length() - 5);
+        CommitGraph.unload();
+        check(CommitGraph.matching(torn.getSha1ID(), 2).isEmpty(), "a torn graph record isn't read");
+
+        Commit next = new Commit("graph after the tear", parent, new HashMap<>(), new LinkedList<>());
+        Commit.saveCommit(next);
+        CommitGraph.add(next);
+        CommitGraph.unload();
+        check(CommitGraph.matching(next.getSha1ID(), 2).equals(Collections.singletonList(next.getSha1ID())),
+                "a graph record added after a tear is found");
+        CommitGraph.Node n = CommitGraph.node(next.getSha1ID());
+        check(n.parents().equals(Collections.singletonList(parent))
+                && n.generation == CommitGraph.node(parent).generation + 1, "a graph record added after a tear reads back");
+    }
+
+    /** messages are found through the index and the trigrams, and a torn last record is dropped */
+    private static void messageJournal() {
+        for (int i = 0; i < 100; i += 1) {
+            Messages.add("message " + i, Utils.sha1("commit " + i));
+        }
+        check(Messages.find("message 42").equals(Collections.singletonList(Utils.sha1("commit 42"))),
+                "find reads a message through the index");
+        check(Messages.containing("sage 7").size() == 11, "find --contains goes through the trigrams");
+
+        tearMessage();
+        Messages.add("after the tear", Utils.sha1("after"));
+        check(Messages.find("after the tear").equals(Collections.singletonList(Utils.sha1("after"))),
+                "a torn record is cut before the next one is added");
+        check(Messages.find("message 99").equals(Collections.singletonList(Utils.sha1("commit 99"))),
+                "messages before a tear are still found");
+        check(Messages.containing("torn").isEmpty(), "a torn record is never found");
+
+        tearMessage();
+        Messages.INDEX.delete();
+        Messages.add("after a rebuild", Utils.sha1("rebuild"));
+        check(Messages.find("after a rebuild").equals(Collections.singletonList(Utils.sha1("rebuild"))),
+                "a torn record is cut when the index is rebuilt");
+        check(Messages.containing("torn").isEmpty(), "a torn record is never found after a rebuild");
+    }
+
+    /** Appends the first bytes of a message record, as a command stopped while appending it would. */
+    private static void tearMessage() {
+        byte[] utf8 = "torn message".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(4 + utf8.length + 20);
+        record.putInt(utf8.length).put(utf8).put(Pack.toBytes(Utils.sha1("torn")));
+        try {
+            Files.write(Messages.JOURNAL.toPath(), Arrays.copyOf(record.array(), 10), StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** a record made durable is applied again by recover(), as often as needed; a torn one is discarded */
+    private static void transactionRecovery() {
+        File dir = objectDir("transaction");
+        File replaced = Utils.join(dir, "replaced");
+        File missing = Utils.join(dir, "missing");
+        File appended = Utils.join(dir, "appended");
+        Utils.writeContents(replaced, "old");
+        Utils.writeContents(appended, "start");
+
+        //the second write fails (its folder isn't there), as if gitlet stopped after the record was on disk
+        Transaction.begin();
+        try {
+            Transaction.write(replaced, "new");
+            Transaction.write(Utils.join(missing, "file"), "made later");
+            Transaction.append(appended, " more".getBytes(StandardCharsets.UTF_8));
+            Transaction.commit();
+            check(false, "the interrupted commit stops");
+        } catch (IllegalArgumentException excp) {
+            check(true, "the interrupted commit stops");
+        } finally {
+            Transaction.abort();
+        }
+        check(Transaction.RECORD.isFile(), "an interrupted commit leaves its record");
+        check(Utils.readContentsAsString(appended).equals("start"), "writes after the interruption aren't applied");
+        byte[] record = Utils.readContents(Transaction.RECORD);
+
+        missing.mkdir();
+        Transaction.recover();
+        check(!Transaction.RECORD.exists(), "recover deletes the record");
+        check(Utils.readContentsAsString(replaced).equals("new")
+                && Utils.readContentsAsString(Utils.join(missing, "file")).equals("made later")
+                && Utils.readContentsAsString(appended).equals("start more"), "recover applies every write");
+
+        Utils.writeContents(Transaction.RECORD, (Object) record);
+        Transaction.recover();
+        check(Utils.readContentsAsString(appended).equals("start more"), "recovering twice appends once");
+
+        Utils.writeContents(Transaction.RECORD, (Object) Arrays.copyOf(record, record.length - 3));
+        Utils.writeContents(replaced, "after");
+        Transaction.recover();
+        check(!Transaction.RECORD.exists() && Utils.readContentsAsString(replaced).equals("after"),
+                "a torn record is discarded without applying it");
+    }
+
+    /** an inner level's abort drops only its own writes, and end() keeps them for the level around it */
+    private static void transactionLevels() {
+        File dir = objectDir("transaction-levels");
+        File kept = Utils.join(dir, "kept");
+        File dropped = Utils.join(dir, "dropped");
+        Transaction.begin();
+        Transaction.write(kept, "outer");
+        Transaction.begin();
+        Transaction.write(dropped, "inner");
+        check(Transaction.readString(dropped).equals("inner"), "a level reads its own pending writes");
+        Transaction.abort();
+        check(!Transaction.exists(dropped), "abort drops the writes of its level");
+        Transaction.begin();
+        Transaction.append(kept, " inner".getBytes(StandardCharsets.UTF_8));
+        Transaction.end();
+        check(!kept.exists(), "nothing is written before the outermost level ends");
+        Transaction.end();
+        check(Utils.readContentsAsString(kept).equals("outer inner") && !dropped.exists(),
+                "the outermost end() writes what the levels kept");
+    }
+
+    private static List<String> journalForward() {
+        List<String> ids = new ArrayList<>();
+        CommitJournal.forward(e -> ids.add(e.id));
+        return ids;
+    }
+
+    private static List<String> journalBackward() {
+        List<String> ids = new ArrayList<>();
+        CommitJournal.backward(e -> ids.add(e.id));
+        return ids;
+    }
+
+    private static List<String> reversed(List<String> list) {
+        List<String> result = new ArrayList<>(list);
+        Collections.reverse(result);
+        return result;
+    }
+
+    /** the index keeps a hash only if the file didn't change while it was being read */
+    private static void indexStat() {
+        File f = Utils.join(Repository.CWD, "index-check.txt");
+        Utils.writeContents(f, "before");
+        String id = Index.sha1(f.getName());
+        check(id.equals(Index.lookup(f.getName())), "an unchanged file's hash is kept");
+        Utils.writeContents(f, "old");
+        Index.hash(f.getName(), file -> {
+            String sha1ID = FileHash.sha1(file);
+            Utils.writeContents(file, "changed while hashing");
+            return sha1ID;
+        });
+        check(Index.lookup(f.getName()) == null, "a file changed while hashing isn't trusted");
+        check(Index.sha1(f.getName()).equals(FileHash.sha1(f)), "it is hashed again, with its new contents");
+        Index.forget(f.getName());
+        f.delete();
+    }
+
+    /** Cuts F down to its first LENGTH bytes, as a crash in the middle of writing it would. */
+    private static void truncate(File f, long length) {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.setLength(length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Records a check named WHAT, which passed if OK. */
+    private static void check(boolean ok, String what) {
+        checks += 1;
+        if (!ok) {
+            failures += 1;
+            System.out.println("FAILED: " + what);
+        }
+    }
+
+    /** Returns a new, empty object directory named NAME. */
+    private static File objectDir(String name) {
+        File dir = Utils.join(Repository.GITLET_DIR, "test-" + name);
+        dir.mkdir();
+        return dir;
+    }
+
+    private static void deleteAll(File dir) {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
 }
@@ -0,0 +1,395 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/** Crash-safe updates of the files a command changes together: HEAD, the
+ *  branches, the staging area and the journals.
+ *
+ *  Between begin() and commit() those writes are only collected.  commit()
+ *  writes them all into one record, .gitlet/transaction, fsyncs it and
+ *  .gitlet (so the record's name is on disk too), and then applies them:
+ *  every replaced file is written to a temporary file, fsynced and renamed
+ *  over the old one, every append is written at the offset it was meant
+ *  for and fsynced.  Once the folders holding them are fsynced as well,
+ *  the record is deleted.  If gitlet stops before the record is on disk,
+ *  none of the writes happened; after it, recover() (run before every
+ *  command) finds the record and applies it again, which is harmless for
+ *  the writes already applied.  A record that was never completely written
+ *  fails its checksum and is discarded.
+ *
+ *  Objects (commits, trees, blobs) are not part of it: they are named by
+ *  their contents and installed by rename before the transaction starts.
+ *  commit() first makes every object the process installed durable (see
+ *  ObjectStore.sync), so a record on disk never points at an object that
+ *  isn't, and an interrupted command can only leave unreferenced objects
+ *  behind.
+ *
+ *  Outside of a transaction the same calls write at once, without fsyncs
+ *  of their own; the objects installed so far are still made durable
+ *  before them, so whatever of them survives a crash points at objects
+ *  that did too.
+ *
+ *  Transactions nest: begin() while one is open starts a level inside it,
+ *  whose abort() only drops the writes made since that begin(), and whose
+ *  end() keeps them for the level around it.  commit() at any level writes
+ *  everything pending.  So a batch (see Batch) keeps the staging area and
+ *  refs in memory across its commands, and they reach the disk when one of
+ *  them commits or the batch ends.
+ *
+ *  Record: "GTXN", version, write count, writes, CRC32 of everything before it
+ *      write -- kind (REPLACE, APPEND or DELETE), path relative to .gitlet,
+ *               offset (APPEND only), length, bytes
+ *
+ *  @author Ruth Frausto
+ */
+class Transaction {
+
+    static final File RECORD = Utils.join(Repository.GITLET_DIR, "transaction");
+
+    private static final int SIGNATURE = 0x4754584e; // "GTXN"
+    private static final int VERSION = 1;
+    private static final int REPLACE = 0;
+    private static final int APPEND = 1;
+    private static final int DELETE = 2;
+
+    /** A write waiting for commit(). */
+    private static class Write {
+        final int kind;
+        final File file;
+        final long offset;
+        final byte[] contents;
+
+        Write(int kind, File file, long offset, byte[] contents) {
+            this.kind = kind;
+            this.file = file;
+            this.offset = offset;
+            this.contents = contents;
+        }
+    }
+
+    /** writes of the open transaction, in order; null when there is none */
+    private static List<Write> pending;
+    /** key: file ---> value: its contents after the pending replaces (null if deleted) */
+    private static LinkedHashMap<File, byte[]> replaced;
+    /** for each open level, innermost first: how many writes were pending when it began */
+    private static ArrayDeque<Integer> levels;
+
+    /** Starts collecting writes, in a new level of the open transaction if there is one. */
+    static void begin() {
+        if (pending == null) {
+            pending = new ArrayList<>();
+            replaced = new LinkedHashMap<>();
+            levels = new ArrayDeque<>();
+        }
+        levels.push(pending.size());
+    }
+
+    /** Closes the innermost level, dropping its writes that weren't committed (nothing if they were). */
+    static void abort() {
+        if (pending == null) {
+            return;
+        }
+        int mark = levels.pop();
+        if (levels.isEmpty()) {
+            pending = null;
+            replaced = null;
+            levels = null;
+            return;
+        }
+        if (mark < pending.size()) {
+            pending.subList(mark, pending.size()).clear();
+            replaced.clear();
+            for (Write w : pending) {
+                if (w.kind == REPLACE) {
+                    replaced.put(w.file, w.contents);
+                } else if (w.kind == DELETE) {
+                    replaced.put(w.file, null);
+                }
+            }
+            Cache.invalidateMutable(); //it may hold the dropped versions
+        }
+    }
+
+    /** Closes the innermost level, keeping its writes: for the level around it, or committed if it was the outermost. */
+    static void end() {
+        if (levels != null && levels.size() > 1) {
+            levels.pop();
+        } else {
+            commit();
+            abort();
+        }
+    }
+
+    /** Replaces the contents of F with CONTENTS. */
+    static void write(File f, byte[] contents) {
+        if (pending == null) {
+            ObjectStore.sync();
+            apply(new Write(REPLACE, f, 0, contents), false);
+            return;
+        }
+        pending.add(new Write(REPLACE, f, 0, contents));
+        replaced.put(f, contents);
+    }
+
+    static void write(File f, String contents) {
+        write(f, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Deletes F. */
+    static void delete(File f) {
+        if (pending == null) {
+            apply(new Write(DELETE, f, 0, new byte[0]), false);
+            return;
+        }
+        pending.add(new Write(DELETE, f, 0, new byte[0]));
+        replaced.put(f, null);
+    }
+
+    /** Adds BYTES at the end of F, after whatever the transaction already wrote or appended to it. */
+    static void append(File f, byte[] bytes) {
+        long offset = f.length();
+        if (pending != null) {
+            for (Write w : pending) {
+                if (w.file.equals(f)) {
+                    //after whatever the writes before it leave in F
+                    offset = w.kind == APPEND ? w.offset + w.contents.length : w.contents.length;
+                }
+            }
+        }
+        Write w = new Write(APPEND, f, offset, bytes);
+        if (pending == null) {
+            ObjectStore.sync();
+            apply(w, false);
+        } else {
+            pending.add(w);
+        }
+    }
+
+    /** Returns the contents of F, as the open transaction has left it. */
+    static byte[] read(File f) {
+        if (replaced != null && replaced.containsKey(f)) {
+            if (replaced.get(f) == null) {
+                throw new IllegalArgumentException("must be a normal file");
+            }
+            return replaced.get(f);
+        }
+        return Utils.readContents(f);
+    }
+
+    /** Returns true if F is a file, as the open transaction has left it. */
+    static boolean exists(File f) {
+        if (replaced != null && replaced.containsKey(f)) {
+            return replaced.get(f) != null;
+        }
+        return f.isFile();
+    }
+
+    /** Returns the names of the plain files in DIR, sorted, as the open transaction has left it. */
+    static List<String> filesIn(File dir) {
+        List<String> files = Utils.plainFilenamesIn(dir);
+        if (replaced == null || files == null) {
+            return files;
+        }
+        TreeSet<String> names = new TreeSet<>(files);
+        for (Map.Entry<File, byte[]> e : replaced.entrySet()) {
+            if (e.getKey().getParentFile().equals(dir)) {
+                if (e.getValue() == null) {
+                    names.remove(e.getKey().getName());
+                } else {
+                    names.add(e.getKey().getName());
+                }
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    static String readString(File f) {
+        return new String(read(f), StandardCharsets.UTF_8);
+    }
+
+    /** Makes the pending writes of every level durable with one fsync, then applies them. */
+    static void commit() {
+        if (pending == null || pending.isEmpty()) {
+            return;
+        }
+        List<Write> writes = pending;
+        pending = new ArrayList<>();
+        replaced = new LinkedHashMap<>();
+        int open = levels.size();
+        levels.clear();
+        for (int i = 0; i < open; i += 1) {
+            levels.push(0); //nothing left for an abort to drop
+        }
+        ObjectStore.sync(); //what the record points at is on disk before the record is
+        byte[] record = encode(writes);
+        try (FileChannel ch = FileChannel.open(RECORD.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.wrap(record);
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            ch.force(false);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        force(Repository.GITLET_DIR);
+        applyAll(writes);
+        RECORD.delete();
+    }
+
+    /**
+     * finishes the transaction of a command that stopped after making it durable,
+     * or discards one that was never completely written
+     */
+    static void recover() {
+        if (!RECORD.isFile()) {
+            return;
+        }
+        List<Write> writes = decode(Utils.readContents(RECORD));
+        if (writes != null) {
+            applyAll(writes);
+        }
+        RECORD.delete();
+    }
+
+    /** Applies the WRITES of a record durably: the record may only go once they are all on disk. */
+    private static void applyAll(List<Write> writes) {
+        LinkedHashSet<File> dirs = new LinkedHashSet<>();
+        for (Write w : writes) {
+            apply(w, true);
+            dirs.add(w.file.getParentFile());
+        }
+        for (File dir : dirs) {
+            force(dir);
+        }
+    }
+
+    /** Applies W, fsyncing the file it writes if DURABLE (its folder is left to the caller). */
+    private static void apply(Write w, boolean durable) {
+        try {
+            if (w.kind == DELETE) {
+                Files.deleteIfExists(w.file.toPath());
+            } else if (w.kind == REPLACE) {
+                //made in .gitlet itself, where nothing lists files, so one left by a crash is never taken for a branch
+                Path tmp = Files.createTempFile(Repository.GITLET_DIR.toPath(), "tmp-", "");
+                try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                    ByteBuffer buf = ByteBuffer.wrap(w.contents);
+                    while (buf.hasRemaining()) {
+                        ch.write(buf);
+                    }
+                    if (durable) {
+                        ch.force(false);
+                    }
+                }
+                Files.move(tmp, w.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                try (FileChannel ch = FileChannel.open(w.file.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE)) {
+                    ch.truncate(w.offset); //a second apply (by recover) must not append twice
+                    ByteBuffer buf = ByteBuffer.wrap(w.contents);
+                    while (buf.hasRemaining()) {
+                        ch.write(buf, w.offset + buf.position());
+                    }
+                    if (durable) {
+                        ch.force(false);
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * fsyncs the file or folder F, if it is still there; for a folder that makes the names in it
+     * (new files, renames, deletions) durable.  Platforms that can't open a folder to sync it are left to their own
+     * guarantees
+     */
+    static void force(File f) {
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (NoSuchFileException excp) {
+            return; //gone since, e.g. an object repacked into a pack (packs are forced when written)
+        } catch (IOException excp) {
+            if (!f.isDirectory()) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    private static byte[] encode(List<Write> writes) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(SIGNATURE);
+            out.writeInt(VERSION);
+            out.writeInt(writes.size());
+            Path gitlet = Repository.GITLET_DIR.toPath();
+            for (Write w : writes) {
+                out.writeByte(w.kind);
+                out.writeUTF(gitlet.relativize(w.file.toPath()).toString());
+                if (w.kind == APPEND) {
+                    out.writeLong(w.offset);
+                }
+                out.writeInt(w.contents.length);
+                out.write(w.contents);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeLong(crc.getValue());
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding transaction.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /** The writes of RECORD, or null if it is torn or corrupt. */
+    private static List<Write> decode(byte[] record) {
+        if (record.length < 20) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length - 8);
+        if (ByteBuffer.wrap(record).getLong(record.length - 8) != crc.getValue()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, 0, record.length - 8))) {
+            if (in.readInt() != SIGNATURE || in.readInt() != VERSION) {
+                return null;
+            }
+            List<Write> writes = new ArrayList<>();
+            int n = in.readInt();
+            for (int i = 0; i < n; i += 1) {
+                int kind = in.readByte();
+                File f = Utils.join(Repository.GITLET_DIR, in.readUTF());
+                long offset = kind == APPEND ? in.readLong() : 0;
+                byte[] contents = new byte[in.readInt()];
+                in.readFully(contents);
+                writes.add(new Write(kind, f, offset, contents));
+            }
+            return writes;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+}
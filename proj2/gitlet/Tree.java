@@ -0,0 +1,241 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** Tree objects: the files of a commit as a Merkle tree.
+ *  Gitlet only tracks the plain files of the CWD, so there are no real
+ *  directory levels to hash.  Instead the root tree has one entry per
+ *  bucket -- the first two hex digits of the sha1 of a file name -- pointing
+ *  at a leaf tree that maps the file names of that bucket to their blobs.
+ *  A commit that changes one file only writes one new leaf and a new root;
+ *  every other bucket is shared with its parent.  Two trees whose bucket
+ *  ids match hold exactly the same files there, so comparisons skip them.
+ *
+ *  Encoding: kind byte, entry count, then (name, 20-byte id) per entry in
+ *  name order, so equal trees always get equal sha1IDs.
+ *
+ *  @author Ruth Frausto
+ */
+class Tree {
+
+    static final File TREES = Utils.join(Repository.GITLET_DIR, "trees");
+
+    private static final int ROOT = 0;
+    private static final int LEAF = 1;
+    private static final int BUCKET_CHARS = 2;
+
+    /** Returns the bucket FILENAME belongs to. */
+    private static String bucketOf(String fileName) {
+        return Utils.sha1(fileName).substring(0, BUCKET_CHARS);
+    }
+
+    /** Writes the tree holding exactly FILES (file name ---> blob sha1ID) and returns its id. */
+    static String write(Map<String, String> files) {
+        return update(null, files, new ArrayList<>());
+    }
+
+    /**
+     * returns the id of the tree ROOTID with the files of PUT added or replaced
+     * and the files of REMOVE taken out
+     * only the buckets those files fall in are rewritten, the rest are shared
+     * @param rootID the tree to start from, null for the empty tree
+     */
+    static String update(String rootID, Map<String, String> put, Collection<String> remove) {
+        TreeMap<String, String> root = rootID == null ? new TreeMap<>() : new TreeMap<>(read(rootID));
+        TreeMap<String, TreeMap<String, String>> touched = new TreeMap<>();
+        for (Map.Entry<String, String> e : put.entrySet()) {
+            leafFor(root, touched, e.getKey()).put(e.getKey(), e.getValue());
+        }
+        for (String file : remove) {
+            leafFor(root, touched, file).remove(file);
+        }
+        for (Map.Entry<String, TreeMap<String, String>> e : touched.entrySet()) {
+            if (e.getValue().isEmpty()) {
+                root.remove(e.getKey());
+            } else {
+                root.put(e.getKey(), save(LEAF, e.getValue()));
+            }
+        }
+        return save(ROOT, root);
+    }
+
+    private static TreeMap<String, String> leafFor(TreeMap<String, String> root,
+                                                   TreeMap<String, TreeMap<String, String>> touched,
+                                                   String file) {
+        String bucket = bucketOf(file);
+        TreeMap<String, String> leaf = touched.get(bucket);
+        if (leaf == null) {
+            String leafID = root.get(bucket);
+            leaf = leafID == null ? new TreeMap<>() : new TreeMap<>(read(leafID));
+            touched.put(bucket, leaf);
+        }
+        return leaf;
+    }
+
+    /** Returns all the files of tree ROOTID, file name ---> blob sha1ID. */
+    static HashMap<String, String> files(String rootID) {
+        HashMap<String, String> files = new HashMap<>();
+        for (String leafID : read(rootID).values()) {
+            files.putAll(read(leafID));
+        }
+        return files;
+    }
+
+    /**
+     * returns, for each of the trees ROOTIDS, only its files in the buckets where the
+     * trees don't all agree; files in buckets with the same id in every tree are the same
+     * everywhere, so they are skipped without ever reading their leaves
+     */
+    static List<HashMap<String, String>> differing(String... rootIDs) {
+        List<TreeMap<String, String>> roots = new ArrayList<>();
+        TreeSet<String> buckets = new TreeSet<>();
+        for (String rootID : rootIDs) {
+            TreeMap<String, String> root = read(rootID);
+            roots.add(root);
+            buckets.addAll(root.keySet());
+        }
+        List<HashMap<String, String>> result = new ArrayList<>();
+        for (int i = 0; i < rootIDs.length; i += 1) {
+            result.add(new HashMap<>());
+        }
+        for (String bucket : buckets) {
+            String first = roots.get(0).get(bucket);
+            boolean same = true;
+            for (TreeMap<String, String> root : roots) {
+                if (first == null || !first.equals(root.get(bucket))) {
+                    same = false;
+                    break;
+                }
+            }
+            if (same) {
+                continue;
+            }
+            for (int i = 0; i < roots.size(); i += 1) {
+                String leafID = roots.get(i).get(bucket);
+                if (leafID != null) {
+                    result.get(i).putAll(read(leafID));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * returns only the files of tree ROOTID and of FILES (file name ---> blob sha1ID, e.g. the CWD)
+     * in the buckets where they differ, as differing() does for two trees
+     * FILES is never saved: the id its leaf of each bucket would get is only computed, and
+     * the leaves of ROOTID are only read for the buckets where that id isn't the same
+     */
+    static List<HashMap<String, String>> differing(String rootID, Map<String, String> files) {
+        TreeMap<String, TreeMap<String, String>> leaves = new TreeMap<>();
+        for (Map.Entry<String, String> e : files.entrySet()) {
+            leaves.computeIfAbsent(bucketOf(e.getKey()), b -> new TreeMap<>()).put(e.getKey(), e.getValue());
+        }
+        TreeMap<String, String> root = read(rootID);
+        TreeSet<String> buckets = new TreeSet<>(root.keySet());
+        buckets.addAll(leaves.keySet());
+        List<HashMap<String, String>> result = new ArrayList<>();
+        result.add(new HashMap<>());
+        result.add(new HashMap<>());
+        for (String bucket : buckets) {
+            String leafID = root.get(bucket);
+            TreeMap<String, String> leaf = leaves.get(bucket);
+            if (leafID != null && leaf != null && leafID.equals(Utils.sha1(encode(LEAF, leaf)))) {
+                continue;
+            }
+            if (leafID != null) {
+                result.get(0).putAll(read(leafID));
+            }
+            if (leaf != null) {
+                result.get(1).putAll(leaf);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the names of NAMES that tree ROOTID holds, reading only the leaves of their buckets. */
+    static Set<String> holding(String rootID, Collection<String> names) {
+        TreeMap<String, String> root = read(rootID);
+        Set<String> held = new HashSet<>();
+        for (String name : names) {
+            String leafID = root.get(bucketOf(name));
+            if (leafID != null && read(leafID).containsKey(name)) {
+                held.add(name);
+            }
+        }
+        return held;
+    }
+
+    /** Encodes ENTRIES as a tree of the given KIND, saves it and returns its sha1ID. */
+    private static String save(int kind, TreeMap<String, String> entries) {
+        byte[] contents = encode(kind, entries);
+        String sha1ID = Utils.sha1(contents);
+        TREES.mkdir(); //repositories made before trees existed don't have it yet
+        ObjectStore.write(TREES, sha1ID, contents);
+        Cache.put(Cache.TREE, sha1ID, entries, cacheSize(entries));
+        return sha1ID;
+    }
+
+    private static byte[] encode(int kind, TreeMap<String, String> entries) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(kind);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, String> e : entries.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.write(Pack.toBytes(e.getValue()));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Internal error serializing tree.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Reads the entries of tree SHA1ID; callers copy them before making changes, since they're cached. */
+    @SuppressWarnings("unchecked")
+    private static TreeMap<String, String> read(String sha1ID) {
+        TreeMap<String, String> entries = Cache.get(Cache.TREE, sha1ID, TreeMap.class);
+        if (entries != null) {
+            return entries;
+        }
+        entries = new TreeMap<>();
+        byte[] contents = ObjectStore.read(TREES, sha1ID);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents))) {
+            in.readByte();
+            int n = in.readInt();
+            byte[] id = new byte[20];
+            for (int i = 0; i < n; i += 1) {
+                String name = in.readUTF();
+                in.readFully(id);
+                entries.put(name, Pack.toHex(id));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt tree %s.", sha1ID);
+        }
+        Cache.put(Cache.TREE, sha1ID, entries, cacheSize(entries));
+        return entries;
+    }
+
+    /** Rough number of bytes ENTRIES take in memory, for the Cache. */
+    private static long cacheSize(TreeMap<String, String> entries) {
+        long size = 64;
+        for (String name : entries.keySet()) {
+            size += 160 + 2L * name.length();
+        }
+        return size;
+    }
+}
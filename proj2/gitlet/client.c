@@ -0,0 +1,93 @@
+/* gitlet client: runs a gitlet command through the daemon of the repository
+ * in the current directory (see Daemon.java) when one is running, and with
+ * java gitlet.Main otherwise.  Starting a JVM takes a few hundred
+ * milliseconds before the command even begins; this hands the command to
+ * the daemon in about one.
+ *
+ *     make client                  (builds ./client)
+ *     client daemon &              (once)
+ *     client add a.txt
+ *
+ * It speaks the daemon's protocol: the arguments separated by NUL bytes,
+ * ended by closing the sending side; then it copies the reply to stdout.
+ * batch (which reads its script here) and daemon are always left to
+ * gitlet.Main, run with the classpath GITLET_CLASSPATH, or CLASSPATH when
+ * that isn't set.
+ *
+ * @author Ruth Frausto
+ */
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <unistd.h>
+#include <sys/socket.h>
+#include <sys/un.h>
+
+#define SOCKET_PATH ".gitlet/daemon.sock"
+
+/* Writes the N bytes of BUF to FD; returns 0 if it couldn't. */
+static int write_all(int fd, const char *buf, size_t n) {
+    while (n > 0) {
+        ssize_t done = write(fd, buf, n);
+        if (done < 0) {
+            return 0;
+        }
+        buf += done;
+        n -= done;
+    }
+    return 1;
+}
+
+/* Hands the command ARGV[1..ARGC) to the daemon and prints its reply;
+ * returns 0, having sent nothing, if no daemon takes it. */
+static int forward(int argc, char **argv) {
+    struct sockaddr_un address;
+    int fd = socket(AF_UNIX, SOCK_STREAM, 0);
+    if (fd < 0) {
+        return 0;
+    }
+    memset(&address, 0, sizeof address);
+    address.sun_family = AF_UNIX;
+    strncpy(address.sun_path, SOCKET_PATH, sizeof address.sun_path - 1);
+    if (connect(fd, (struct sockaddr *) &address, sizeof address) < 0) {
+        close(fd); /* no socket, or the daemon that made it is gone */
+        return 0;
+    }
+    for (int i = 1; i < argc; i += 1) {
+        if ((i > 1 && !write_all(fd, "", 1)) || !write_all(fd, argv[i], strlen(argv[i]))) {
+            perror("gitlet client");
+            exit(1);
+        }
+    }
+    shutdown(fd, SHUT_WR);
+    char reply[64 * 1024];
+    ssize_t n;
+    while ((n = read(fd, reply, sizeof reply)) > 0) {
+        if (!write_all(STDOUT_FILENO, reply, n)) {
+            exit(1);
+        }
+    }
+    close(fd);
+    return 1;
+}
+
+int main(int argc, char **argv) {
+    if (argc > 1 && strcmp(argv[1], "batch") != 0 && strcmp(argv[1], "daemon") != 0
+            && forward(argc, argv)) {
+        return 0;
+    }
+    char **java = calloc(argc + 4, sizeof(char *));
+    int n = 0;
+    java[n++] = "java";
+    if (getenv("GITLET_CLASSPATH") != NULL) {
+        java[n++] = "-cp";
+        java[n++] = getenv("GITLET_CLASSPATH");
+    }
+    java[n++] = "gitlet.Main";
+    for (int i = 1; i < argc; i += 1) {
+        java[n++] = argv[i];
+    }
+    execvp("java", java);
+    perror("gitlet client: java");
+    return 1;
+}